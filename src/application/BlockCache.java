@@ -0,0 +1,255 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Caches decoded basic blocks of ROM code so that instructions executed from
+ * ROM skip the opcode fetch through the memory map and the table lookup.
+ * Blocks are keyed by ROM bank and address, so switching banks never
+ * invalidates them. Code running from RAM is not cached and always goes
+ * through the interpreter.
+ * 
+ * While decoding, the start of each {@link Fusion} sequence also gets the
+ * fused handler for it, indexed by the first opcode of the sequence.
+ */
+class BlockCache {
+
+    private static final int MAX_BLOCK_LENGTH = 64;
+    private static final int BANK_SIZE = 0x4000;
+
+    /* Instruction lengths in bytes, including the opcode */
+    private static final int[] LENGTHS = {
+        1, 3, 1, 1, 1, 1, 2, 1, 3, 1, 1, 1, 1, 1, 2, 1, // 0x00
+        2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1, // 0x10
+        2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1, // 0x20
+        2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1, // 0x30
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x40
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x50
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x60
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x70
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x80
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x90
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0xA0
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0xB0
+        1, 1, 3, 3, 3, 1, 2, 1, 1, 1, 3, 2, 3, 3, 2, 1, // 0xC0
+        1, 1, 3, 1, 3, 1, 2, 1, 1, 1, 3, 1, 3, 1, 2, 1, // 0xD0
+        2, 1, 1, 1, 1, 1, 2, 1, 2, 1, 3, 1, 1, 1, 2, 1, // 0xE0
+        2, 1, 1, 1, 1, 1, 2, 1, 2, 1, 3, 1, 1, 1, 2, 1  // 0xF0
+    };
+
+    /* Jumps, calls, returns, RST, HALT, STOP and the undefined opcodes */
+    private static final int[] BLOCK_ENDS = {
+        0x10, 0x18, 0x20, 0x28, 0x30, 0x38, 0x76,
+        0xC0, 0xC2, 0xC3, 0xC4, 0xC7, 0xC8, 0xC9, 0xCA, 0xCC, 0xCD, 0xCF,
+        0xD0, 0xD2, 0xD3, 0xD4, 0xD7, 0xD8, 0xD9, 0xDA, 0xDB, 0xDC, 0xDD, 0xDF,
+        0xE3, 0xE4, 0xE7, 0xE9, 0xEB, 0xEC, 0xED, 0xEF,
+        0xF4, 0xF7, 0xFC, 0xFD, 0xFF
+    };
+
+    private static final boolean[] ENDS_BLOCK = new boolean[0x100];
+
+    static {
+        for (int opcode : BLOCK_ENDS) {
+
+            ENDS_BLOCK[opcode] = true;
+        }
+    }
+
+    /**
+     * A run of decoded instructions ending at the first control transfer.
+     * nextPCs holds the value of PC once the opcode (and CB prefix) has been
+     * fetched, which is where the handler expects to find its operands.
+     * fused holds the fused handler for a sequence starting at that
+     * instruction, or null.
+     */
+    static class Block {
+
+        final int bank;
+        final int length;
+        final int[] addrs;
+        final int[] nextPCs;
+        final Instruction[] ops;
+        final Instruction[] fused;
+
+        Block(int bank, int length, int[] addrs, int[] nextPCs, Instruction[] ops,
+                Instruction[] fused) {
+
+            this.bank = bank;
+            this.length = length;
+            this.addrs = addrs;
+            this.nextPCs = nextPCs;
+            this.ops = ops;
+            this.fused = fused;
+        }
+    }
+
+    private final MemoryMap mmu;
+    private final Instruction[] instructions;
+    private final Instruction[] cbInstructions;
+    private final Instruction[] fusedInstructions;
+
+    private Block[] fixedBlocks;
+    private Block[][] bankBlocks;
+
+    BlockCache(MemoryMap mmu, Instruction[] instructions, Instruction[] cbInstructions,
+            Instruction[] fusedInstructions) {
+
+        this.mmu = mmu;
+        this.instructions = instructions;
+        this.cbInstructions = cbInstructions;
+        this.fusedInstructions = fusedInstructions;
+
+        clear();
+    }
+
+    /**
+     * Drops every cached block. Needed whenever a different ROM is loaded.
+     */
+    void clear() {
+
+        fixedBlocks = new Block[BANK_SIZE];
+        bankBlocks = null;
+    }
+
+    /**
+     * Returns the block starting at addr in the currently mapped bank,
+     * decoding it on first use, or null if addr is not in ROM or the block
+     * cannot be decoded.
+     */
+    Block getBlock(int addr) {
+
+        Cartridge cart = mmu.getCart();
+
+        Block[] blocks;
+        int bank;
+        int base;
+        if (addr < BANK_SIZE) {
+
+            if (cart.getFixedRomBank() != 0) {
+
+                // Large MBC1 carts in mode 1, rare enough to interpret
+                return null;
+            }
+
+            blocks = fixedBlocks;
+            bank = 0;
+            base = 0;
+        } else if (addr < 2 * BANK_SIZE) {
+
+            bank = cart.getCurrRomBank();
+            if (bank < 0 || bank >= cart.getNumRomBanks()) {
+
+                return null;
+            }
+
+            if (bankBlocks == null) {
+
+                bankBlocks = new Block[cart.getNumRomBanks()][];
+            }
+            blocks = bankBlocks[bank];
+            if (blocks == null) {
+
+                blocks = new Block[BANK_SIZE];
+                bankBlocks[bank] = blocks;
+            }
+            base = BANK_SIZE;
+        } else {
+
+            return null;
+        }
+
+        Block block = blocks[addr - base];
+        if (block == null) {
+
+            block = decode(cart, bank, base, addr);
+            blocks[addr - base] = block;
+        }
+
+        return block;
+    }
+
+    private Block decode(Cartridge cart, int bank, int base, int start) {
+
+        int[] addrs = new int[MAX_BLOCK_LENGTH];
+        int[] nextPCs = new int[MAX_BLOCK_LENGTH];
+        Instruction[] ops = new Instruction[MAX_BLOCK_LENGTH];
+        Instruction[] fused = new Instruction[MAX_BLOCK_LENGTH];
+
+        int length = 0;
+        int addr = start;
+        while (length < MAX_BLOCK_LENGTH) {
+
+            int opcode = cart.readRom(bank, addr - base);
+
+            // Leave instructions that straddle the end of the bank to the
+            // interpreter
+            if (addr + LENGTHS[opcode] > base + BANK_SIZE) {
+
+                break;
+            }
+
+            addrs[length] = addr;
+            if (opcode == 0xCB) {
+
+                ops[length] = cbInstructions[cart.readRom(bank, addr + 1 - base)];
+                nextPCs[length] = addr + 2;
+            } else {
+
+                ops[length] = instructions[opcode];
+                nextPCs[length] = addr + 1;
+
+                if (isFusable(cart, bank, base, addr, opcode)) {
+
+                    fused[length] = fusedInstructions[opcode];
+                }
+            }
+            length++;
+
+            addr += LENGTHS[opcode];
+            if (ENDS_BLOCK[opcode]) {
+
+                break;
+            }
+        }
+
+        if (length == 0) {
+
+            return null;
+        }
+
+        return new Block(bank, length, Arrays.copyOf(addrs, length),
+                Arrays.copyOf(nextPCs, length), Arrays.copyOf(ops, length),
+                Arrays.copyOf(fused, length));
+    }
+
+    /**
+     * Returns true if addr starts one of the {@link Fusion} sequences that
+     * fits in the bank.
+     */
+    private boolean isFusable(Cartridge cart, int bank, int base, int addr, int opcode) {
+
+        if (fusedInstructions[opcode] == null) {
+
+            return false;
+        }
+
+        int[] code = new int[6];
+        for (int i = 0; i < code.length && addr + i < base + BANK_SIZE; i++) {
+
+            code[i] = cart.readRom(bank, addr + i - base);
+        }
+
+        switch (opcode) {
+        case 0x2A:
+            // LDI A,(HL); LD (DE),A; INC DE
+            return code[1] == 0x12 && code[2] == 0x13;
+        case 0xF0:
+            // LDH A,(n); CP n; JR cc,e
+            return code[2] == 0xFE && (code[4] & 0xE7) == 0x20
+                    && addr + 6 <= base + BANK_SIZE;
+        default:
+            // DEC r; JR NZ,e
+            return code[1] == 0x20 && addr + 3 <= base + BANK_SIZE;
+        }
+    }
+}
@@ -2,9 +2,12 @@ package application;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Calendar;
 
@@ -21,13 +24,16 @@ public class Cartridge {
     private Mode mode;
     private boolean cgbMode = false;
     private boolean sgbMode = false;
-    private int[][] romBanks;
-    private int currRomBank;
-    private boolean romModeEnabled;
-    private boolean ramEnabled;
+    /*
+     * The ROM file mapped read only. Banks are copied out of it into
+     * romBanks the first time they are used, so loading a ROM reads only
+     * the header and banks that are never switched in cost nothing.
+     */
+    private MappedByteBuffer rom;
+    private byte[][] romBanks;
     private int ramSize;
-    private int[] ram;
-    private int currRamBank;
+    private byte[] ram;
+    private Mapper mapper = new RomOnlyMapper(this);
     private boolean rtcLatchEnabled;
     private Calendar startTime;
     private int rtcLatchSeconds;
@@ -44,9 +50,9 @@ public class Cartridge {
 
         System.out.println("Loading Rom: " + fileName);
 
-        try {
+        try (FileChannel channel = FileChannel.open(romFile.toPath(), StandardOpenOption.READ)) {
 
-            byte[] data = Files.toByteArray(romFile);
+            MappedByteBuffer data = channel.map(MapMode.READ_ONLY, 0, channel.size());
 
             loadHeader(data);
 
@@ -61,34 +67,30 @@ public class Cartridge {
         return true;
     }
 
-    private void loadHeader(byte[] data) throws UnsupportedEncodingException {
+    private void loadHeader(MappedByteBuffer data) throws IOException {
 
-        title = new String(Arrays.copyOfRange(data, 0x134, 0x0143),
-                StandardCharsets.US_ASCII);
+        title = getString(data, 0x134, 0x0143);
         System.out.println(title);
 
-        String manufacturerCode = new String(Arrays.copyOfRange(data, 0x13F,
-                0x0142), StandardCharsets.US_ASCII);
+        String manufacturerCode = getString(data, 0x13F, 0x0142);
         System.out.println(manufacturerCode);
 
-        cgbMode = ((data[0x143] & 0x80) == 0x80);
+        cgbMode = ((data.get(0x143) & 0x80) == 0x80);
         System.out.println("CGB Flag: " + cgbMode);
 
-        String licenseeCode = new String(
-                Arrays.copyOfRange(data, 0x144, 0x0145),
-                StandardCharsets.US_ASCII);
+        String licenseeCode = getString(data, 0x144, 0x0145);
         System.out.println(licenseeCode);
 
-        sgbMode = ((data[0x0146] & 0x3) == 0x3);
+        sgbMode = ((data.get(0x0146) & 0x3) == 0x3);
         System.out.println("SGB Flag: " + sgbMode);
 
-        type = CartridgeType.getByIndex(data[0x0147]);
+        type = CartridgeType.getByIndex(data.get(0x0147));
         System.out.println(type.getName());
 
-        size = CartridgeSize.getByIndex(data[0x0148]);
+        size = CartridgeSize.getByIndex(data.get(0x0148));
         System.out.println(size.getName());
 
-        switch (data[0x0149]) {
+        switch (data.get(0x0149)) {
 
         case 0x00:
             ramSize = 0;
@@ -115,27 +117,22 @@ public class Cartridge {
         }
         System.out.println("Ram Size: " + ramSize);
 
-        ram = new int[ramSize];
-        for (int i = 0; i < ramSize; i++)
-            ram[i] = 0xFF;
+        ram = new byte[ramSize];
+        Arrays.fill(ram, (byte) 0xFF);
 
-        ramEnabled = true;
-        currRamBank = 0;
+        if (data.capacity() < size.getNumBanks() * 0x4000) {
 
-        romBanks = new int[size.getNumBanks()][0x4000];
+            throw new IOException("ROM file is smaller than " + size.getName());
+        }
 
-        for (int b = 0; b < size.getNumBanks(); b++) {
-            for (int i = 0; i < 0x4000; i++) {
+        rom = data;
+        romBanks = new byte[size.getNumBanks()][];
 
-                romBanks[b][i] = data[(0x4000 * b) + i] & 0xFF;
-            }
-        }
-        romModeEnabled = true;
-        currRomBank = 1;
+        mapper = Mapper.create(this, type);
 
-        System.out.println("Destination Code: " + data[0x014A]);
-        System.out.println("Old Licensee Code: " + data[0x014B]);
-        System.out.println("Version number: " + data[0x014C]);
+        System.out.println("Destination Code: " + data.get(0x014A));
+        System.out.println("Old Licensee Code: " + data.get(0x014B));
+        System.out.println("Version number: " + data.get(0x014C));
 
         startTime = Calendar.getInstance();
 
@@ -146,14 +143,90 @@ public class Cartridge {
 
     }
 
+    private static String getString(ByteBuffer data, int start, int end) {
+
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+
+            bytes[i] = data.get(start + i);
+        }
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
     public int readRom(int bankNum, int addr) {
 
-        return romBanks[bankNum][addr] & 0xFF;
+        byte[] bank = romBanks[bankNum];
+        if (bank == null) {
+
+            bank = copyRomBank(bankNum);
+        }
+
+        return bank[addr] & 0xFF;
+    }
+
+    /**
+     * Returns the array holding a 16KB ROM bank, or null if there is no such
+     * bank. Bytes are signed, mask them when reading.
+     */
+    byte[] getRomBank(int bankNum) {
+
+        if (romBanks == null || bankNum >= romBanks.length) {
+
+            return null;
+        }
+
+        byte[] bank = romBanks[bankNum];
+        if (bank == null) {
+
+            bank = copyRomBank(bankNum);
+        }
+
+        return bank;
+    }
+
+    private byte[] copyRomBank(int bankNum) {
+
+        byte[] bank = new byte[0x4000];
+
+        ByteBuffer slice = rom.duplicate();
+        slice.position(bankNum * 0x4000);
+        slice.get(bank);
+
+        romBanks[bankNum] = bank;
+
+        return bank;
+    }
+
+    /**
+     * Returns the bytes of ROM copied out of the mapped file so far.
+     */
+    public long getRomFootprint() {
+
+        long bytes = 0;
+        if (romBanks != null) {
+
+            for (byte[] bank : romBanks) {
+
+                if (bank != null) {
+
+                    bytes += bank.length;
+                }
+            }
+        }
+
+        return bytes;
     }
 
     public void writeRom(int bankNum, int addr, int val) {
 
-        romBanks[bankNum][addr] = (val & 0xFF);
+        byte[] bank = romBanks[bankNum];
+        if (bank == null) {
+
+            bank = copyRomBank(bankNum);
+        }
+
+        bank[addr] = (byte) val;
     }
 
     public int readRam(int addr) {
@@ -161,24 +234,31 @@ public class Cartridge {
         return ram[addr] & 0xFF;
     }
 
-    public void writeRam(int addr, int val) {
+    /**
+     * Returns the array holding all banks of cartridge RAM, or null if no ROM
+     * is loaded. Bytes are signed, mask them when reading.
+     */
+    byte[] getRam() {
 
-        ram[addr] = (val & 0xFF);
+        return ram;
     }
 
-    public void enableRam() {
+    public void writeRam(int addr, int val) {
 
-        ramEnabled = true;
+        ram[addr] = (byte) val;
     }
 
-    public void disableRam() {
+    public boolean isRamEnabled() {
 
-        ramEnabled = false;
+        return mapper.isRamEnabled();
     }
 
-    public boolean isRamEnabled() {
+    /**
+     * Returns the bank controller picked for the loaded ROM.
+     */
+    Mapper getMapper() {
 
-        return ramEnabled;
+        return mapper;
     }
 
     public Type getType() {
@@ -186,39 +266,46 @@ public class Cartridge {
         return type.getType();
     }
 
-    public void setToRomMode() {
-
-        romModeEnabled = true;
-    }
-
-    public void setToRamMode() {
+    /**
+     * Returns the number of 16KB ROM banks, or 0 if no ROM is loaded.
+     */
+    public int getNumRomBanks() {
 
-        romModeEnabled = false;
+        return romBanks != null ? romBanks.length : 0;
     }
 
-    public boolean isRomMode() {
+    /**
+     * Returns the ROM file name without its extension.
+     */
+    public String getFileName() {
 
-        return romModeEnabled;
+        return fileName;
     }
 
     public int getCurrRomBank() {
 
-        return currRomBank;
+        return mapper.getCurrRomBank();
     }
 
-    public void setCurrRomBank(int bankNum) {
+    /**
+     * Returns the ROM bank mapped at 0x0000-0x3FFF.
+     */
+    public int getFixedRomBank() {
 
-        currRomBank = bankNum;
+        return mapper.getCurrFixedRomBank();
     }
 
     public int getCurrRamBank() {
 
-        return currRamBank;
+        return mapper.getCurrRamBank();
     }
 
-    public void setCurrRamBank(int bankNum) {
+    /**
+     * Returns whether an MBC5 rumble cartridge has its motor switched on.
+     */
+    public boolean isRumbleOn() {
 
-        currRamBank = bankNum;
+        return mapper.isRumbleOn();
     }
 
     public boolean isCGB() {
@@ -359,7 +446,7 @@ public class Cartridge {
 
                 for (int i = 0; i < ram.length; i++) {
 
-                    ram[i] = data[i] & 0xFF;
+                    ram[i] = data[i];
                 }
 
                 if (type.getType().equals(Type.MBC3)) {
@@ -404,7 +491,7 @@ public class Cartridge {
                 byte[] data = new byte[ram.length + extra];
                 for (int i = 0; i < ram.length; i++) {
 
-                    data[i] = (byte) (ram[i] & 0xFF);
+                    data[i] = ram[i];
                 }
 
                 if (type.getType().equals(Type.MBC3)) {
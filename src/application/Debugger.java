@@ -0,0 +1,237 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory watchpoints and execute breakpoints for one machine, reporting each
+ * hit to a listener and optionally pausing until {@link #resume()}.
+ */
+public class Debugger {
+
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int EXECUTE = 4;
+
+    public interface Listener {
+
+        /**
+         * Called on a hit of watchpoint. For EXECUTE, addr is the instruction
+         * about to run and val its opcode.
+         */
+        void hit(Watchpoint watchpoint, int type, long cycle, int pc, int addr, int val);
+    }
+
+    public static class Watchpoint {
+
+        private final int types;
+        private final int start;
+        private final int end;
+        private final boolean pause;
+
+        private Watchpoint(int types, int start, int end, boolean pause) {
+
+            this.types = types;
+            this.start = start;
+            this.end = end;
+            this.pause = pause;
+        }
+
+        public int getTypes() {
+
+            return types;
+        }
+
+        public int getStart() {
+
+            return start;
+        }
+
+        public int getEnd() {
+
+            return end;
+        }
+
+        public boolean isPause() {
+
+            return pause;
+        }
+    }
+
+    private final MemoryMap mmu;
+    private final Z80 z80;
+
+    private final List<Watchpoint> watchpoints = new ArrayList<>();
+    private final boolean[] readPages = new boolean[0x100];
+    private final boolean[] writePages = new boolean[0x100];
+    private final boolean[] breakpointPages = new boolean[0x100];
+
+    private Listener listener;
+
+    private boolean paused;
+
+    /* Breakpoint the machine paused on, skipped once when it resumes */
+    private int pausedAddr = -1;
+    private int resumeAddr = -1;
+
+    public Debugger(MemoryMap mmu, Z80 z80) {
+
+        this.mmu = mmu;
+        this.z80 = z80;
+    }
+
+    public void setListener(Listener listener) {
+
+        this.listener = listener;
+    }
+
+    /**
+     * Watches start to end inclusive for the given types, any of READ, WRITE
+     * and EXECUTE or'd together.
+     */
+    public Watchpoint addWatchpoint(int types, int start, int end, boolean pause) {
+
+        if (start < 0 || end > 0xFFFF || start > end) {
+
+            throw new IllegalArgumentException(String.format("Bad watch range %04X-%04X", start, end));
+        }
+
+        Watchpoint watchpoint = new Watchpoint(types, start, end, pause);
+        watchpoints.add(watchpoint);
+        update();
+
+        return watchpoint;
+    }
+
+    public Watchpoint addBreakpoint(int addr, boolean pause) {
+
+        return addWatchpoint(EXECUTE, addr, addr, pause);
+    }
+
+    public void removeWatchpoint(Watchpoint watchpoint) {
+
+        watchpoints.remove(watchpoint);
+        update();
+    }
+
+    public void clearWatchpoints() {
+
+        watchpoints.clear();
+        update();
+    }
+
+    public List<Watchpoint> getWatchpoints() {
+
+        return new ArrayList<>(watchpoints);
+    }
+
+    public boolean isPaused() {
+
+        return paused;
+    }
+
+    /**
+     * Lets a paused machine run again. A breakpoint it paused on does not
+     * fire again for the instruction it stopped before.
+     */
+    public void resume() {
+
+        paused = false;
+        resumeAddr = pausedAddr;
+        pausedAddr = -1;
+    }
+
+    /**
+     * Rebuilds the per-page bits and hands them to the memory map and the
+     * CPU, detaching from both when no watchpoint is left.
+     */
+    private void update() {
+
+        boolean watched = false;
+
+        Arrays.fill(readPages, false);
+        Arrays.fill(writePages, false);
+        Arrays.fill(breakpointPages, false);
+
+        for (Watchpoint watchpoint : watchpoints) {
+
+            for (int page = watchpoint.start >> 8; page <= watchpoint.end >> 8; page++) {
+
+                readPages[page] |= (watchpoint.types & READ) != 0;
+                writePages[page] |= (watchpoint.types & WRITE) != 0;
+                breakpointPages[page] |= (watchpoint.types & EXECUTE) != 0;
+            }
+
+            watched |= (watchpoint.types & (READ | WRITE)) != 0;
+        }
+
+        mmu.setWatchedPages(watched ? this : null, readPages, writePages);
+        z80.setDebugger(watchpoints.isEmpty() ? null : this);
+    }
+
+    /**
+     * Called by the CPU before running the instruction at addr. Returns true
+     * if a breakpoint there paused the machine.
+     */
+    boolean stopsAt(int addr, int opcode) {
+
+        int skipAddr = resumeAddr;
+        resumeAddr = -1;
+
+        if (!breakpointPages[addr >> 8] || addr == skipAddr) {
+
+            return false;
+        }
+
+        if (check(EXECUTE, addr, addr, opcode)) {
+
+            pausedAddr = addr;
+            return true;
+        }
+
+        return false;
+    }
+
+    void memoryRead(int addr, int val) {
+
+        check(READ, z80.getInstructionAddress(), addr, val);
+    }
+
+    void memoryWritten(int addr, int val) {
+
+        check(WRITE, z80.getInstructionAddress(), addr, val);
+    }
+
+    /**
+     * Reports every watchpoint of type covering addr and returns true if one
+     * of them paused the machine.
+     */
+    private boolean check(int type, int pc, int addr, int val) {
+
+        boolean pause = false;
+        for (int i = 0; i < watchpoints.size(); i++) {
+
+            Watchpoint watchpoint = watchpoints.get(i);
+            if ((watchpoint.types & type) == 0 || addr < watchpoint.start || addr > watchpoint.end) {
+
+                continue;
+            }
+
+            if (listener != null) {
+
+                listener.hit(watchpoint, type, z80.getCycleCount(), pc, addr, val);
+            }
+            pause |= watchpoint.pause;
+        }
+
+        if (pause && !paused) {
+
+            paused = true;
+            pausedAddr = -1;
+            mmu.endBatch();
+        }
+
+        return pause;
+    }
+}
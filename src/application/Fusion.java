@@ -0,0 +1,23 @@
+package application;
+
+/**
+ * Instruction sequences the block cache runs as a single fused handler.
+ */
+enum Fusion {
+
+    MEMCPY("LDI A,(HL); LD (DE),A; INC DE"),
+    DEC_JR_NZ("DEC r; JR NZ,e"),
+    POLL("LDH A,(n); CP n; JR cc,e");
+
+    private String name;
+
+    Fusion(String name) {
+
+        this.name = name;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+}
@@ -9,9 +9,13 @@ public class Gameboy {
     public static final int SCREEN_WIDTH = 160;
     public static final int SCREEN_HEIGHT = 144;
 
-    private Z80 z80;
-    private Sound sound;
-    private MemoryMap mmu;
+    private static final int MAX_SPRITES_PER_LINE = 10;
+
+    private final Z80 z80;
+    private final Sound sound;
+    private final MemoryMap mmu;
+    private final TileCache tileCache;
+    private final Debugger debugger;
 
     private int lcdModeTimer;
     private boolean frameComplete;
@@ -21,16 +25,74 @@ public class Gameboy {
     private int[][] bgScreen = new int[SCREEN_HEIGHT][SCREEN_WIDTH];
     private int[][] screen = new int[SCREEN_HEIGHT][SCREEN_WIDTH];
 
+    /* Sprites on the current line as X << 8 | OAM index, in drawing order */
+    private final int[] lineSprites = new int[MAX_SPRITES_PER_LINE];
+
+    /* Shades of the four background color numbers for the current line */
+    private final int[] lineShades = new int[4];
+
+    /**
+     * Builds a machine with its own cartridge slot, memory map, CPU and
+     * sound, playing through the default audio line.
+     */
     public Gameboy() {
 
-        z80 = new Z80();
+        this(new MemoryMap(new Cartridge()));
+    }
+
+    private Gameboy(MemoryMap mmu) {
+
+        this(mmu, new Z80(mmu), openSound(mmu));
+    }
+
+    /**
+     * Builds a machine from parts wired to the same memory map. Nothing is
+     * shared between machines, so each can run on its own thread.
+     */
+    public Gameboy(MemoryMap mmu, Z80 z80, Sound sound) {
+
+        this.mmu = mmu;
+        this.z80 = z80;
+        this.sound = sound;
+        tileCache = mmu.getTileCache();
+        debugger = new Debugger(mmu, z80);
+
+        mmu.setIoSync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                syncDevices();
+            }
+        });
+    }
+
+    private static Sound openSound(MemoryMap mmu) {
+
         try {
-            sound = new Sound();
+
+            return new Sound(mmu);
         } catch (LineUnavailableException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
+
+            return null;
         }
-        mmu = MemoryMap.getInstance();
+    }
+
+    public MemoryMap getMemoryMap() {
+
+        return mmu;
+    }
+
+    public Cartridge getCart() {
+
+        return mmu.getCart();
+    }
+
+    public Debugger getDebugger() {
+
+        return debugger;
     }
 
     public void powerUp() {
@@ -45,22 +107,114 @@ public class Gameboy {
         sound.startAudio();
     }
 
+    /**
+     * Runs until the end of the current frame, or until the debugger pauses
+     * the machine.
+     */
     public void executeOneFrame() {
 
         frameComplete = false;
 
-        while (!frameComplete) {
+        while (!frameComplete && !debugger.isPaused()) {
 
-            int cycles = z80.execute();
+            int idleCycles = getIdleCycles();
+            if (idleCycles > 0) {
+
+                z80.addStoppedCycles(idleCycles);
+                updateTimer(idleCycles);
+                mmu.updateOamDma(idleCycles);
+                updateLCDStatus(idleCycles);
+                sound.updateSound(idleCycles);
+                continue;
+            }
+
+            z80.run(getCyclesToNextEvent());
+            syncDevices();
+
+            if (!debugger.isPaused()) {
+
+                z80.checkInterrupts();
+            }
+        }
+    }
+
+    /**
+     * Brings the timer, LCD and sound up to date with the cycles the CPU and
+     * VRAM DMA have used.
+     */
+    private void syncDevices() {
+
+        int cycles = z80.takePendingCycles();
+        if (cycles > 0) {
 
             updateTimer(cycles);
+            mmu.updateOamDma(cycles);
             updateLCDStatus(cycles);
             sound.updateSound(cycles);
+        }
+
+        int stallCycles = mmu.takeDmaStallCycles();
+        while (stallCycles > 0) {
 
-            z80.checkInterrupts();
+            // A long transfer can span several LCD modes, stop at each one
+            cycles = Math.min(stallCycles, Math.max(1, getCyclesToNextEvent()));
+            z80.addStoppedCycles(cycles);
+            updateTimer(cycles);
+            mmu.updateOamDma(cycles);
+            updateLCDStatus(cycles);
+            sound.updateSound(cycles);
+            stallCycles -= cycles;
         }
     }
 
+    /**
+     * Returns how many cycles can be skipped while the CPU is halted or in a
+     * polling loop, or 0 if it has to be stepped.
+     */
+    private int getIdleCycles() {
+
+        // Skipped passes would hide their accesses from watchpoints
+        if (z80.isDebuggerAttached()) {
+
+            return 0;
+        }
+
+        int step;
+        if (z80.isIdle()) {
+
+            step = 4;
+        } else {
+
+            step = z80.getPollLoopCycles();
+            if (step == 0) {
+
+                return 0;
+            }
+        }
+
+        int cycles = getCyclesToNextEvent();
+
+        return cycles - (cycles % step);
+    }
+
+    /**
+     * Returns how many cycles can pass before an LCD mode change, a TIMA
+     * overflow or the end of a timed OAM DMA.
+     */
+    private int getCyclesToNextEvent() {
+
+        if (vBlankPending) {
+
+            return 0;
+        }
+
+        int cycles = mmu.getCurrLcdMode().getCycles() - lcdModeTimer;
+
+        cycles = Math.min(cycles, mmu.getCyclesToTimerOverflow());
+
+        return Math.max(0, Math.min(cycles, mmu.getCyclesToOamDmaEnd()));
+    }
+
     public void updateTimer(int cyclesRun) {
 
         mmu.incDIVTimer(cyclesRun);
@@ -133,7 +287,9 @@ public class Gameboy {
                 if (mmu.getCart().isCGB()) {
 
                     int cycles = mmu.handleDmaTransfer();
+                    z80.addStoppedCycles(cycles);
                     updateTimer(cycles);
+                    mmu.updateOamDma(cycles);
                     lcdModeTimer += cycles;
                     sound.updateSound(cycles);
                 }
@@ -176,40 +332,7 @@ public class Gameboy {
 
             int yPos = (mmu.SCY() + ly) % 256;
 
-            for (int x = 0; x < SCREEN_WIDTH; x++) {
-
-                int xPos = (mmu.SCX() + x) % 256;
-
-                int row = (yPos >> 3) & 0xFF;
-                int col = (xPos >> 3) & 0xFF;
-
-                int tileAddr = mmu.getTileAddr(mmu.getBgTileNum(row, col));
-
-                int tileInfo = mmu.getBgTileInfo(row, col);
-
-                // each vertical line takes up two bytes of memory
-                int line = (yPos % 8) * 2;
-
-                int tileBank = 0;
-                if (mmu.getCart().isCGB()) {
-
-                    tileBank = (tileInfo & 0x8) >> 3;
-                }
-
-                int data1 = mmu.vram[tileBank][tileAddr + line] & 0xFF;
-                int data2 = mmu.vram[tileBank][tileAddr + line + 1] & 0xFF;
-
-                int colorBit = 7 - (xPos % 8);
-                // combine data 2 and data 1 to get the colour id for this pixel
-                int colorNumber = ((data2 & (1 << colorBit)) == 0) ? 0 : 0x2;
-                colorNumber |= ((data1 & (1 << colorBit)) == 0) ? 0 : 1;
-
-                // finally get color from palette and draw
-                int color = getColor(colorNumber, mmu.BGP());
-
-                bgScreen[ly][x] = color;
-                screen[ly][x] = color;
-            }
+            drawTileLine(ly, 0, mmu.SCX(), yPos, mmu.bgTileMapAddress());
 
         } else {
 
@@ -232,47 +355,62 @@ public class Gameboy {
             int yPos = ly - wy;
 
             int wx = mmu.WX();
+            int x = Math.max(0, wx - 7);
 
-            for (int x = 0; x < 160; x++) {
+            if (x < SCREEN_WIDTH) {
 
-                if (x >= (wx - 7)) {
+                drawTileLine(ly, x, x - (wx - 7), yPos, mmu.windowTileMapAddress());
+            }
+        }
+    }
 
-                    int xPos = x - (wx - 7);
+    /**
+     * Draws line ly from screen position x to the right edge, from the tile
+     * map at mapAddr starting mapX pixels across and mapY pixels down it.
+     */
+    private void drawTileLine(int ly, int x, int mapX, int mapY, int mapAddr) {
 
-                    int row = (yPos >> 3) & 0xFF;
-                    int col = (xPos >> 3) & 0xFF;
+        int bgp = mmu.BGP();
+        for (int colorNumber = 0; colorNumber < 4; colorNumber++) {
 
-                    int tileAddr = mmu.getTileAddr(mmu.getWindowTileNum(row,
-                            col));
+            lineShades[colorNumber] = getColor(colorNumber, bgp);
+        }
 
-                    // each vertical line takes up two bytes of memory
-                    int line = (yPos % 8) * 2;
+        boolean cgb = mmu.getCart().isCGB();
+        byte[] tileNums = mmu.vram[0];
+        byte[] tileInfos = mmu.vram[1];
 
-                    int tileInfo = mmu.getWindowTileInfo(row, col);
+        int rowAddr = mapAddr + ((mapY >> 3) & 0x1F) * 32;
+        int tileRow = (mapY % 8) * 8;
 
-                    int tileBank = 0;
-                    if (mmu.getCart().isCGB()) {
+        int[] bgLine = bgScreen[ly];
+        int[] line = screen[ly];
 
-                        tileBank = (tileInfo & 0x8) >> 3;
-                    }
+        while (x < SCREEN_WIDTH) {
 
-                    int data1 = mmu.vram[tileBank][tileAddr + line] & 0xFF;
-                    int data2 = mmu.vram[tileBank][tileAddr + line + 1] & 0xFF;
+            int entryAddr = rowAddr + ((mapX >> 3) & 0x1F);
 
-                    int colorBit = 7 - (xPos % 8);
-                    // combine data 2 and data 1 to get the colour id for this
-                    // pixel
-                    int colorNumber = ((data2 & (1 << colorBit)) == 0) ? 0
-                            : 0x2;
-                    colorNumber |= ((data1 & (1 << colorBit)) == 0) ? 0 : 1;
+            int tileBank = 0;
+            if (cgb) {
 
-                    // finally get color from palette and draw
-                    int color = getColor(colorNumber, mmu.BGP());
+                tileBank = (tileInfos[entryAddr] & 0x8) >> 3;
+            }
 
-                    bgScreen[ly][x] = color;
-                    screen[ly][x] = color;
-                }
+            int tileAddr = mmu.getTileAddr(tileNums[entryAddr]);
+            byte[] tile = tileCache.getTile(tileBank, tileAddr >> 4);
+
+            int pixel = tileRow + mapX % 8;
+            int count = Math.min(8 - mapX % 8, SCREEN_WIDTH - x);
+
+            for (int end = x + count; x < end; x++, pixel++) {
+
+                int color = lineShades[tile[pixel]];
+
+                bgLine[x] = color;
+                line[x] = color;
             }
+
+            mapX = (mapX + count) & 0xFF;
         }
     }
 
@@ -285,70 +423,91 @@ public class Gameboy {
             int bgColor0 = getColor(0, mmu.BGP());
 
             Sprite[] sprites = mmu.getSprites();
+            int count = selectLineSprites(sprites, ly, objSize);
 
-            for (Sprite sprite : sprites) {
+            // Lowest priority first, so the sprite with the smallest X, then
+            // the lowest OAM index, ends up on top
+            for (int i = count - 1; i >= 0; i--) {
+
+                Sprite sprite = sprites[lineSprites[i] & 0xFF];
 
                 int tileNum = sprite.getTileNum();
                 if (objSize == 16)
                     tileNum &= 0xFE;
 
-                if ((ly >= sprite.getY() - 16) && (ly < (sprite.getY() - 16 + objSize))) {
+                int line = ly - (sprite.getY() - 16);
 
-                    int line = ly - (sprite.getY() - 16);
+                if (sprite.yFlip())
+                    line = objSize - line - 1;
 
-                    if (sprite.yFlip())
-                        line = objSize - line - 1;
+                int tileBank = 0;
+                if (mmu.getCart().isCGB()) {
 
-                    // each vertical line takes up two bytes of memory
-                    line *= 2;
+                    tileBank = sprite.getTileBank();
+                }
 
-                    int dataAddress = (tileNum * 16) + line;
+                // the lower half of a tall sprite is the next tile
+                byte[] tile;
+                if (sprite.xFlip())
+                    tile = tileCache.getFlippedTile(tileBank, tileNum + (line >> 3));
+                else
+                    tile = tileCache.getTile(tileBank, tileNum + (line >> 3));
+                int rowStart = (line % 8) * 8;
 
-                    int tileBank = 0;
-                    if (mmu.getCart().isCGB()) {
+                for (int pixel = 0; pixel < 8; pixel++) {
 
-                        tileBank = sprite.getTileBank();
-                    }
+                    int pos = pixel + sprite.getX() - 8;
+                    if (pos > 159 || pos < 0)
+                        continue;
 
-                    int data1 = mmu.vram[tileBank][dataAddress];
-                    int data2 = mmu.vram[tileBank][dataAddress + 1];
+                    int colorNumber = tile[rowStart + pixel];
 
-                    for (int pixel = 7; pixel >= 0; pixel--) {
+                    if (colorNumber == 0)
+                        continue;
 
-                        int colorBit = pixel;
+                    // get color from palette
+                    int palette;
+                    if (sprite.gbPalNum() == 1)
+                        palette = mmu.OBP1();
+                    else
+                        palette = mmu.OBP0();
 
-                        int pos = 7 - pixel + sprite.getX() - 8;
-                        if (pos > 159 || pos < 0)
-                            continue;
+                    int color = getColor(colorNumber, palette);
 
-                        if (sprite.xFlip())
-                            colorBit = 7 - colorBit;
+                    if (sprite.isObjAboveBG() || bgScreen[ly][pos] == bgColor0)
+                        screen[ly][pos] = color;
+                }
+            }
+        }
 
-                        // combine data 2 and data 1 to get the colour id for
-                        // this pixel
-                        int colorNumber = ((data2 & (1 << colorBit)) == 0) ? 0
-                                : 0x2;
-                        colorNumber |= ((data1 & (1 << colorBit)) == 0) ? 0 : 1;
+    }
 
-                        if (colorNumber == 0)
-                            continue;
+    /**
+     * Leaves the sprites shown on line ly in lineSprites, in drawing order,
+     * and returns how many there are.
+     */
+    private int selectLineSprites(Sprite[] sprites, int ly, int objSize) {
 
-                        // get color from palette
-                        int palette;
-                        if (sprite.gbPalNum() == 1)
-                            palette = mmu.OBP1();
-                        else
-                            palette = mmu.OBP0();
+        int count = 0;
+        for (int i = 0; i < sprites.length && count < MAX_SPRITES_PER_LINE; i++) {
 
-                        int color = getColor(colorNumber, palette);
+            Sprite sprite = sprites[i];
+            if ((ly >= sprite.getY() - 16) && (ly < (sprite.getY() - 16 + objSize))) {
 
-                        if (sprite.isObjAboveBG() || bgScreen[ly][pos] == bgColor0)
-                            screen[ly][pos] = color;
-                    }
+                // insertion sort, at most ten entries
+                int key = (sprite.getX() << 8) | i;
+                int j = count - 1;
+                while (j >= 0 && lineSprites[j] > key) {
+
+                    lineSprites[j + 1] = lineSprites[j];
+                    j--;
                 }
+                lineSprites[j + 1] = key;
+                count++;
             }
         }
 
+        return count;
     }
 
     private int getColor(int colorNum, int palette) {
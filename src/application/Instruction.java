@@ -0,0 +1,13 @@
+package application;
+
+/**
+ * A single decoded opcode handler. Returns the number of cycles the
+ * instruction took, including any extra cycles for taken branches.
+ * 
+ * This is an abstract class rather than an interface so that dispatching
+ * through the opcode tables is a plain virtual call.
+ */
+abstract class Instruction {
+
+    abstract int execute();
+}
@@ -0,0 +1,172 @@
+package application;
+
+/**
+ * Owns the interrupt registers IE and IF, the master enable IME with its
+ * one instruction EI delay, and the HALT state. The pending mask is only
+ * recomputed when one of those changes, so the check the CPU makes after
+ * every instruction is a single compare.
+ */
+public class InterruptController {
+
+    private static final int INTERRUPT_MASK = 0x1F;
+
+    /* In priority order, bit n of IE and IF is INTERRUPTS[n] */
+    private static final Interrupt[] INTERRUPTS = Interrupt.values();
+
+    /* Set in attention while an EI or DI is waiting to take effect */
+    private static final int IME_CHANGE = 0x100;
+
+    private int IE;
+    private int IF;
+    private boolean IME;
+    private boolean enableIME;
+    private boolean disableIME;
+    private boolean halted;
+
+    /*
+     * Requested and enabled interrupts, plus IME_CHANGE. Nonzero whenever the
+     * CPU has something to do between instructions.
+     */
+    private int attention;
+
+    public void reset() {
+
+        IE = 0x00;
+        IME = false;
+        enableIME = false;
+        disableIME = false;
+        halted = false;
+
+        update();
+    }
+
+    public int getIE() {
+
+        return IE;
+    }
+
+    public void setIE(int val) {
+
+        IE = val & 0xFF;
+        update();
+    }
+
+    public int getIF() {
+
+        return IF;
+    }
+
+    public void setIF(int val) {
+
+        IF = val & 0xFF;
+        update();
+    }
+
+    public void request(Interrupt interrupt) {
+
+        IF |= interrupt.getMask();
+        update();
+    }
+
+    /**
+     * EI and RETI: IME is set once the current instruction completes, so an
+     * interrupt can be taken after the one that follows.
+     */
+    public void scheduleEnable() {
+
+        enableIME = true;
+        update();
+    }
+
+    /**
+     * DI: IME is cleared once the current instruction completes.
+     */
+    public void scheduleDisable() {
+
+        disableIME = true;
+        update();
+    }
+
+    public boolean isMasterEnabled() {
+
+        return IME;
+    }
+
+    public void halt() {
+
+        halted = true;
+    }
+
+    public boolean isHalted() {
+
+        return halted;
+    }
+
+    /**
+     * Returns true if an interrupt is pending or IME is about to change.
+     */
+    public boolean needsAttention() {
+
+        return attention != 0;
+    }
+
+    /**
+     * Returns true if the CPU is halted and only a new interrupt can wake it.
+     */
+    public boolean isIdle() {
+
+        return halted && attention == 0;
+    }
+
+    /**
+     * Runs between instructions. Wakes the CPU if an interrupt is pending,
+     * applies a delayed EI or DI and, if IME allows it, acknowledges the
+     * highest priority pending interrupt and returns its vector. Returns -1
+     * if no interrupt is to be serviced.
+     */
+    public int acknowledge() {
+
+        int vector = -1;
+
+        int pending = attention & INTERRUPT_MASK;
+        if (pending != 0) {
+
+            halted = false;
+
+            if (IME) {
+
+                IME = false;
+
+                // the lowest set bit has the highest priority
+                int bit = Integer.numberOfTrailingZeros(pending);
+                IF &= ~(1 << bit);
+                vector = INTERRUPTS[bit].getVector();
+            }
+        }
+
+        if (enableIME) {
+
+            enableIME = false;
+            IME = true;
+        }
+
+        if (disableIME) {
+
+            disableIME = false;
+            IME = false;
+        }
+
+        update();
+
+        return vector;
+    }
+
+    private void update() {
+
+        attention = IE & IF & INTERRUPT_MASK;
+        if (enableIME || disableIME) {
+
+            attention |= IME_CHANGE;
+        }
+    }
+}
@@ -6,6 +6,8 @@ public enum LcdMode {
             "Searching OAM-RAM", 80), DATA_TRANSFER(0x3,
             "Transfering Data to LCD Driver", 172);
 
+    private static final LcdMode[] MODES = values();
+
     private int index;
     private String name;
     private int cycles;
@@ -49,7 +51,7 @@ public enum LcdMode {
 
     public static LcdMode getByIndex(int index) {
 
-        for (LcdMode size : values()) {
+        for (LcdMode size : MODES) {
 
             if (size.getIndex() == index) {
 
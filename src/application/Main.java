@@ -34,8 +34,8 @@ public class Main extends Application {
         launch(args);
     }
 
-    final MemoryMap mmu = MemoryMap.getInstance();
     private Gameboy gameboy;
+    private MemoryMap mmu;
 
     private Color[] colors = { Color.rgb(255, 255, 255), Color.rgb(170, 170, 170), Color.rgb(85, 85, 85), Color.rgb(0, 0, 0) };
 
@@ -50,6 +50,7 @@ public class Main extends Application {
     public void start(final Stage primaryStage) throws IOException {
 
         gameboy = new Gameboy();
+        mmu = gameboy.getMemoryMap();
 
         final Duration oneFrameDur = Duration.millis(17);
         final KeyFrame oneFrame = new KeyFrame(oneFrameDur,
@@ -178,7 +179,7 @@ public class Main extends Application {
             @Override
             public void handle(ActionEvent event) {
 
-                TileMapWindow testWindow = new TileMapWindow();
+                TileMapWindow testWindow = new TileMapWindow(mmu);
                 testWindow.show();
             }
         });
@@ -0,0 +1,200 @@
+package application;
+
+/**
+ * Memory bank controller of a cartridge. Decodes writes to the control
+ * registers at 0x0000-0x7FFF and keeps the ROM and RAM banks they select,
+ * so MemoryMap can point its page table straight at them. Only RAM a
+ * controller handles itself, such as MBC2 RAM or the MBC3 clock, and RAM
+ * that is disabled go through readRam and writeRam.
+ *
+ * One subclass per controller, picked from the cartridge type when a ROM
+ * is loaded. This is an abstract class rather than an interface for the
+ * same reason as Instruction.
+ */
+abstract class Mapper {
+
+    protected static final int RAM_BANK_SIZE = 0x2000;
+
+    protected final Cartridge cart;
+
+    /* Banks selected by the registers, ROM banks before wrapping */
+    protected int fixedRomBankNum;
+    protected int romBankNum = 1;
+    protected int ramBankNum;
+    protected boolean ramEnabled;
+
+    /*
+     * Banks mapped, refreshed by updateBanks. ROM bank numbers wrap at the
+     * size of the ROM, as the unused upper bits of a bank register are not
+     * connected.
+     */
+    private int currFixedRomBank;
+    private int currRomBank;
+    private byte[] fixedRomBank;
+    private byte[] romBank;
+    private byte[] ramBank;
+    private int ramOffset;
+
+    Mapper(Cartridge cart) {
+
+        this.cart = cart;
+
+        // Enabled from the start once a ROM is loaded, unlike on hardware
+        ramEnabled = cart.getRam() != null;
+        updateBanks();
+    }
+
+    static Mapper create(Cartridge cart, CartridgeType type) {
+
+        switch (type.getType()) {
+
+        case MBC1:
+            return new Mbc1Mapper(cart);
+
+        case MBC2:
+            return new Mbc2Mapper(cart);
+
+        case MBC3:
+            return new Mbc3Mapper(cart);
+
+        case MBC5:
+            return new Mbc5Mapper(cart, type == CartridgeType.MBC5_RUMBLE
+                    || type == CartridgeType.MBC5_RUMBLE_RAM
+                    || type == CartridgeType.MBC5_RUMBLE_RAM_BATTEYR);
+
+        default:
+            return new RomOnlyMapper(cart);
+        }
+    }
+
+    /**
+     * Handles a write of val to addr in 0x0000-0x7FFF.
+     */
+    abstract void writeControl(int addr, int val);
+
+    /**
+     * Returns the offset of the selected RAM bank in cartridge RAM, or -1 if
+     * the controller has to handle accesses to 0xA000-0xBFFF itself.
+     */
+    protected int getRamBankOffset() {
+
+        byte[] ram = cart.getRam();
+        int banks = ram != null ? ram.length / RAM_BANK_SIZE : 0;
+
+        return banks > 1 ? (ramBankNum % banks) * RAM_BANK_SIZE : 0;
+    }
+
+    /**
+     * Returns the ROM bank mapped at 0x0000-0x3FFF.
+     */
+    int getCurrFixedRomBank() {
+
+        return currFixedRomBank;
+    }
+
+    /**
+     * Returns the ROM bank mapped at 0x4000-0x7FFF.
+     */
+    int getCurrRomBank() {
+
+        return currRomBank;
+    }
+
+    int getCurrRamBank() {
+
+        return ramBankNum;
+    }
+
+    boolean isRamEnabled() {
+
+        return ramEnabled;
+    }
+
+    boolean isRumbleOn() {
+
+        return false;
+    }
+
+    /**
+     * Refreshes the banks below after the registers changed.
+     */
+    protected void updateBanks() {
+
+        int banks = cart.getNumRomBanks();
+        currFixedRomBank = banks > 0 ? fixedRomBankNum % banks : fixedRomBankNum;
+        currRomBank = banks > 0 ? romBankNum % banks : romBankNum;
+
+        fixedRomBank = cart.getRomBank(currFixedRomBank);
+        romBank = cart.getRomBank(currRomBank);
+
+        byte[] ram = cart.getRam();
+        int offset = ram != null && ramEnabled ? getRamBankOffset() : -1;
+        ramBank = offset >= 0 ? ram : null;
+        ramOffset = offset;
+    }
+
+    /**
+     * Returns the array holding the ROM bank at 0x0000-0x3FFF, or null if no
+     * ROM is loaded.
+     */
+    byte[] getFixedRomPage() {
+
+        return fixedRomBank;
+    }
+
+    /**
+     * Returns the array holding the ROM bank at 0x4000-0x7FFF, or null if no
+     * ROM is loaded.
+     */
+    byte[] getRomPage() {
+
+        return romBank;
+    }
+
+    /**
+     * Returns the array holding the RAM at 0xA000-0xBFFF from
+     * getRamOffset(), or null if accesses have to go through readRam and
+     * writeRam.
+     */
+    byte[] getRamBank() {
+
+        return ramBank;
+    }
+
+    int getRamOffset() {
+
+        return ramOffset;
+    }
+
+    /**
+     * Reads addr, relative to 0xA000, while the RAM bank is not mapped.
+     */
+    int readRam(int addr) {
+
+        if (!ramEnabled) {
+
+            return 0xFF;
+        }
+
+        return cart.readRam(getRamBankOffset() + addr);
+    }
+
+    /**
+     * Writes addr, relative to 0xA000, while the RAM bank is not mapped.
+     */
+    void writeRam(int addr, int val) {
+
+        if (ramEnabled) {
+
+            cart.writeRam(getRamBankOffset() + addr, val);
+        }
+    }
+
+    /**
+     * Decodes the RAM enable register of MBC1, MBC3 and MBC5.
+     */
+    protected void writeRamEnable(int val) {
+
+        ramEnabled = (val & 0xF) == 0xA;
+    }
+}
@@ -0,0 +1,53 @@
+package application;
+
+/**
+ * MBC1: a 5 bit and a 2 bit bank register. The 2 bit register supplies
+ * bits 5-6 of the ROM bank at 0x4000-0x7FFF. In mode 1 it also selects the
+ * RAM bank and the ROM bank at 0x0000-0x3FFF, which only matters for ROMs
+ * over 512KB. Writing 0 to the 5 bit register selects 1, so banks 0x20,
+ * 0x40 and 0x60 cannot be mapped at 0x4000-0x7FFF.
+ */
+class Mbc1Mapper extends Mapper {
+
+    private int lowBank = 1;
+    private int highBank;
+    private boolean mode1;
+
+    Mbc1Mapper(Cartridge cart) {
+
+        super(cart);
+    }
+
+    @Override
+    void writeControl(int addr, int val) {
+
+        switch (addr & 0x6000) {
+
+        case 0x0000:
+            writeRamEnable(val);
+            break;
+
+        case 0x2000:
+            lowBank = val & 0x1F;
+            if (lowBank == 0) {
+
+                lowBank++;
+            }
+            break;
+
+        case 0x4000:
+            highBank = val & 0x03;
+            break;
+
+        case 0x6000:
+            mode1 = (val & 0x1) == 0x1;
+            break;
+        }
+
+        romBankNum = (highBank << 5) | lowBank;
+        fixedRomBankNum = mode1 ? highBank << 5 : 0;
+        ramBankNum = mode1 ? highBank : 0;
+
+        updateBanks();
+    }
+}
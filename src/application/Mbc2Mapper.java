@@ -0,0 +1,64 @@
+package application;
+
+/**
+ * MBC2: 4 bit ROM bank and 512 half bytes of built in RAM, repeated across
+ * 0xA000-0xBFFF. Bit 8 of the address picks the register written at
+ * 0x0000-0x3FFF: set for the ROM bank, clear for RAM enable.
+ */
+class Mbc2Mapper extends Mapper {
+
+    private static final int RAM_SIZE = 0x200;
+
+    Mbc2Mapper(Cartridge cart) {
+
+        super(cart);
+    }
+
+    @Override
+    void writeControl(int addr, int val) {
+
+        if (addr < 0x4000) {
+
+            if ((addr & 0x0100) == 0x0100) {
+
+                romBankNum = val & 0x0F;
+                if (romBankNum == 0) {
+
+                    romBankNum++;
+                }
+            } else {
+
+                writeRamEnable(val);
+            }
+        }
+
+        updateBanks();
+    }
+
+    @Override
+    protected int getRamBankOffset() {
+
+        return -1;
+    }
+
+    @Override
+    int readRam(int addr) {
+
+        if (!ramEnabled) {
+
+            return 0xFF;
+        }
+
+        // Only the low four bits exist, the rest read as set
+        return 0xF0 | (cart.readRam(addr & (RAM_SIZE - 1)) & 0x0F);
+    }
+
+    @Override
+    void writeRam(int addr, int val) {
+
+        if (ramEnabled) {
+
+            cart.writeRam(addr & (RAM_SIZE - 1), val & 0x0F);
+        }
+    }
+}
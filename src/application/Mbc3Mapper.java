@@ -0,0 +1,137 @@
+package application;
+
+import java.util.Calendar;
+
+/**
+ * MBC3: 7 bit ROM bank, four RAM banks and a real time clock. Selecting RAM
+ * bank 0x8-0xC maps a clock register at 0xA000-0xBFFF instead of RAM. The
+ * clock itself is kept by Cartridge, which saves it along with the RAM.
+ */
+class Mbc3Mapper extends Mapper {
+
+    Mbc3Mapper(Cartridge cart) {
+
+        super(cart);
+    }
+
+    @Override
+    void writeControl(int addr, int val) {
+
+        switch (addr & 0x6000) {
+
+        case 0x0000:
+            writeRamEnable(val);
+            break;
+
+        case 0x2000:
+            val &= 0x7F;
+            if (val == 0) {
+
+                val++;
+            }
+            romBankNum = val;
+            break;
+
+        case 0x4000:
+            ramBankNum = val & 0xF;
+            break;
+
+        case 0x6000:
+            // Writing 0 then 1 latches the clock into its registers
+            if (val == 0x01 && cart.isRtcLatchEnabled()) {
+
+                cart.setRtcLatch(Calendar.getInstance().getTimeInMillis()
+                        - cart.getStartTime().getTimeInMillis());
+            }
+            cart.setRtcLatchEnabled(val == 0x00);
+            break;
+        }
+
+        updateBanks();
+    }
+
+    @Override
+    protected int getRamBankOffset() {
+
+        return ramBankNum <= 0x3 ? super.getRamBankOffset() : -1;
+    }
+
+    @Override
+    int readRam(int addr) {
+
+        if (!ramEnabled) {
+
+            return 0xFF;
+        }
+
+        switch (ramBankNum) {
+        case 0x0:
+        case 0x1:
+        case 0x2:
+        case 0x3:
+            return cart.readRam(super.getRamBankOffset() + addr);
+        case 0x8:
+            return cart.getRtcLatchSeconds();
+        case 0x9:
+            return cart.getRtcLatchMinutes();
+        case 0xA:
+            return cart.getRtcLatchHours();
+        case 0xB:
+            return cart.getRtcLatchDays() & 0xFF;
+        case 0xC:
+            int val = (cart.getRtcLatchDays() & 0x100) >> 8;
+            if (cart.isRtcCarry()) {
+                val |= 0x80;
+            }
+            if (cart.isRtcHalt()) {
+                val |= 0x40;
+            }
+            return val;
+        default:
+            return 0;
+        }
+    }
+
+    @Override
+    void writeRam(int addr, int val) {
+
+        if (!ramEnabled) {
+
+            return;
+        }
+
+        switch (ramBankNum) {
+        case 0x0:
+        case 0x1:
+        case 0x2:
+        case 0x3:
+            cart.writeRam(super.getRamBankOffset() + addr, val);
+            break;
+        case 0x8:
+            cart.setRtcLatchSeconds(val);
+            break;
+        case 0x9:
+            cart.setRtcLatchMinutes(val);
+            break;
+        case 0xA:
+            cart.setRtcLatchHours(val);
+            break;
+        case 0xB:
+            cart.setRtcLatchDays((cart.getRtcLatchDays() & 0x100) | (val & 0xFF));
+            break;
+        case 0xC:
+            cart.setRtcLatchDays((cart.getRtcLatchDays() & 0xFF) | ((val & 0x1) << 8));
+            boolean isHalt = (val & 0x40) == 0x40;
+            cart.setRtcCarry((val & 0x80) == 0x80);
+            if (isHalt)
+                cart.setRtcHaltTime(cart.getRtcLatch());
+            if (cart.isRtcHalt() && !isHalt)
+            {
+                long haltTime = cart.getRtcLatch() - cart.getRtcHaltTime();
+                cart.getStartTime().setTimeInMillis(cart.getStartTime().getTimeInMillis() + haltTime);
+            }
+            cart.setRtcHalt(isHalt);
+            break;
+        }
+    }
+}
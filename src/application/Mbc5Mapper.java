@@ -0,0 +1,58 @@
+package application;
+
+/**
+ * MBC5: 9 bit ROM bank, split over 0x2000 and 0x3000, and up to 16 RAM
+ * banks. Bank 0 can be mapped at 0x4000-0x7FFF. On rumble cartridges bit 3
+ * of the RAM bank register drives the motor instead.
+ */
+class Mbc5Mapper extends Mapper {
+
+    private final boolean rumble;
+    private boolean rumbleOn;
+
+    Mbc5Mapper(Cartridge cart, boolean rumble) {
+
+        super(cart);
+        this.rumble = rumble;
+    }
+
+    @Override
+    void writeControl(int addr, int val) {
+
+        switch (addr & 0x7000) {
+
+        case 0x0000:
+        case 0x1000:
+            writeRamEnable(val);
+            break;
+
+        case 0x2000:
+            romBankNum = (romBankNum & 0x100) | val;
+            break;
+
+        case 0x3000:
+            romBankNum = (romBankNum & 0xFF) | ((val & 0x1) << 8);
+            break;
+
+        case 0x4000:
+        case 0x5000:
+            if (rumble) {
+
+                rumbleOn = (val & 0x8) == 0x8;
+                ramBankNum = val & 0x7;
+            } else {
+
+                ramBankNum = val & 0xF;
+            }
+            break;
+        }
+
+        updateBanks();
+    }
+
+    @Override
+    boolean isRumbleOn() {
+
+        return rumbleOn;
+    }
+}
@@ -1,34 +1,11 @@
 package application;
 
 import java.util.Arrays;
-import java.util.Calendar;
 
 import application.Key.KeyType;
-import application.model.Word;
 
 public class MemoryMap {
 
-    private static MemoryMap instance;
-
-    protected MemoryMap() {
-
-    }
-
-    public static synchronized MemoryMap getInstance() {
-
-        if (instance == null) {
-
-            instance = new MemoryMap();
-        }
-
-        if (cart == null) {
-
-            cart = new Cartridge();
-        }
-
-        return instance;
-    }
-
     public static final int JOYP = 0x00;
     public static final int SB = 0x01;
     public static final int SC = 0x01;
@@ -83,21 +60,30 @@ public class MemoryMap {
     public static final int OBPD = 0x6B;
     public static final int SVBK = 0x70;
 
-    private static Cartridge cart;
-    public static int[][] vram = new int[2][0x2000];
-    public static int[][] wram = new int[8][0x1000];
-    public static int[] oam = new int[0xA0];
-    public static int[] io = new int[0x80];
-    public static int[] hram = new int[0x7F];
-    public static int IE = 0x00;
+    private final Cartridge cart;
+    public final byte[][] vram = new byte[2][0x2000];
+    public final byte[][] wram = new byte[8][0x1000];
+    public final byte[] oam = new byte[0xA0];
+    public final int[] io = new int[0x80];
+    public final byte[] hram = new byte[0x7F];
+
+    public final Sprite[] sprites = new Sprite[40];
 
-    public static Sprite[] sprites = new Sprite[40];
+    /* Kept up to date by writes to 0x8000-0x97FF, see mapVram */
+    private final TileCache tileCache = new TileCache(vram);
 
     private int[] bgPalette = new int[0x40];
     private int[] obPalette = new int[0x40];
 
     private static final int DIV_RATE = 256;
 
+    private static final int OAM_SIZE = 0xA0;
+
+    /* CGB VRAM DMA moves 16 bytes per 8 M-cycles, the CPU is stopped meanwhile */
+    private static final int HDMA_BLOCK_SIZE = 0x10;
+    private static final int HDMA_BLOCK_CYCLES = 32;
+    private static final int OAM_DMA_CYCLES = 4 * OAM_SIZE;
+
     private int divTimer;
     private int timaTimer;
 
@@ -107,8 +93,339 @@ public class MemoryMap {
     private int currVramBank;
     private int currWramBank;
 
-    private Word sourceAddr;
-    private Word destAddr;
+    /*
+     * Bumped whenever the ROM or WRAM bank is remapped, so a page returned
+     * by getCodePage can be checked with a single compare.
+     */
+    private int bankVersion;
+
+    /*
+     * Page tables for the 256 byte pages of the address space. A page mapped
+     * straight onto a ROM, RAM or VRAM array is read or written at
+     * pageOffset + (addr & 0xFF) of it; null pages have side effects or
+     * checks and go through readUnmapped and writeUnmapped. ROM pages are
+     * read only, writes to them are MBC commands.
+     */
+    private final byte[][] readPages = new byte[0x100][];
+    private final int[] readOffsets = new int[0x100];
+    private final byte[][] writePages = new byte[0x100][];
+    private final int[] writeOffsets = new int[0x100];
+
+    private int sourceAddr;
+    private int destAddr;
+    private int dmaStallCycles;
+
+    /*
+     * Timed OAM DMA: the source is read into oamDmaBuffer when the transfer
+     * starts and copied into OAM one byte per M-cycle. While cycles remain,
+     * everything below 0xFF00 is unmapped and reads as 0xFF.
+     */
+    private boolean timedOamDma;
+    private final byte[] oamDmaBuffer = new byte[OAM_SIZE];
+    private int oamDmaRemaining;
+    private int oamDmaCopied;
+
+    private InterruptController interrupts = new InterruptController();
+
+    private Runnable ioSync;
+    private boolean ioWritten;
+
+    /*
+     * Pages with read or write watchpoints. They are kept out of the page
+     * tables, so only accesses that already take the slow path check these.
+     */
+    private Debugger debugger;
+    private final boolean[] readWatches = new boolean[0x100];
+    private final boolean[] writeWatches = new boolean[0x100];
+
+    /*
+     * Side effects of the I/O registers at 0xFF00-0xFF7F, indexed by
+     * register. Registers without any share the plain io[] handler.
+     */
+    private final IoHandler[] ioHandlers = new IoHandler[0x80];
+
+    public MemoryMap(Cartridge cart) {
+
+        this.cart = cart;
+        registerIoHandlers();
+    }
+
+    /**
+     * Reads and writes one I/O register, by default from and to io[].
+     */
+    private class IoHandler {
+
+        int read(int reg) {
+
+            return io[reg];
+        }
+
+        void write(int reg, int val) {
+
+            io[reg] = val;
+        }
+    }
+
+    private void registerIoHandlers() {
+
+        Arrays.fill(ioHandlers, new IoHandler());
+
+        ioHandlers[JOYP] = new IoHandler() {
+
+            @Override
+            int read(int reg) {
+
+                if ((~io[JOYP] & (1 << 4)) == (1 << 4)) {
+
+                    return joyDirection | 0xF0;
+                } else if ((~io[JOYP] & (1 << 5)) == (1 << 5)) {
+
+                    return joyButton | 0xF0;
+                }
+
+                return 0;
+            }
+        };
+
+        ioHandlers[SB] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                System.out.print((char) val);
+                io[SB] = val;
+            }
+        };
+
+        ioHandlers[DIV] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                divTimer = 0;
+                io[DIV] = 0;
+            }
+        };
+
+        ioHandlers[TAC] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                val &= 0x07;
+                if (((val & 0x3) != (io[TAC] & 0x3)) || ((val & 0x4) == 0)) {
+
+                    timaTimer = 0;
+                    io[TIMA] = io[TMA];
+                }
+                io[TAC] = val;
+            }
+        };
+
+        ioHandlers[IF] = new IoHandler() {
+
+            @Override
+            int read(int reg) {
+
+                return interrupts.getIF();
+            }
+
+            @Override
+            void write(int reg, int val) {
+
+                val |= 0xE0;
+                interrupts.setIF(val);
+                io[IF] = val;
+            }
+        };
+
+        ioHandlers[LCDC] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                boolean screenOn = (val & 0x80) == 0x80;
+                if (isScreenOn() && !screenOn) {
+                    io[LY] = 0;
+                    io[STAT] &= ~0x03;
+
+                    checkLYC();
+
+                    // reset lcdModeTimer;
+                } else if (!isScreenOn() && screenOn) {
+
+                    // reset lcdModeTimer;
+                }
+                io[LCDC] = val;
+            }
+        };
+
+        ioHandlers[STAT] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                io[STAT] = (val & ~0x07) | (io[STAT] & 0x07);
+            }
+        };
+
+        ioHandlers[LY] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                io[LY] = 0;
+            }
+        };
+
+        ioHandlers[LYC] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                io[LYC] = val;
+                checkLYC();
+            }
+        };
+
+        ioHandlers[DMA] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                if (timedOamDma) {
+
+                    startTimedOamDma(val);
+                } else {
+
+                    copyOamDmaSource(val, oam);
+                    decodeSprites(0, OAM_SIZE);
+                }
+                io[DMA] = val;
+            }
+        };
+
+        ioHandlers[VBK] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                if (cart.isCGB()) {
+
+                    currVramBank = val & 0x1;
+                    mapVram();
+                }
+                io[VBK] = val;
+            }
+        };
+
+        // NEW DMA for CGB
+        ioHandlers[HDMA5] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                if (cart.isCGB()) {
+
+                    val = startHdma(val);
+                }
+                io[HDMA5] = val;
+            }
+        };
+
+        ioHandlers[BGPD] = new IoHandler() {
+
+            @Override
+            int read(int reg) {
+
+                return bgPalette[io[BGPI] & 0x3F];
+            }
+
+            @Override
+            void write(int reg, int val) {
+
+                bgPalette[io[BGPI] & 0x3F] = val;
+
+                if ((io[BGPI] & 0x80) == 0x80) {
+
+                    io[BGPI]++;
+                    io[BGPI] &= ~0x40;
+                }
+                io[BGPD] = val;
+            }
+        };
+
+        ioHandlers[OBPD] = new IoHandler() {
+
+            @Override
+            int read(int reg) {
+
+                return obPalette[io[OBPI] & 0x3F];
+            }
+
+            @Override
+            void write(int reg, int val) {
+
+                obPalette[io[OBPI] & 0x3F] = val;
+
+                if ((io[OBPI] & 0x80) == 0x80) {
+
+                    io[OBPI]++;
+                    io[OBPI] &= ~0x40;
+                }
+                io[OBPD] = val;
+            }
+        };
+
+        ioHandlers[SVBK] = new IoHandler() {
+
+            @Override
+            void write(int reg, int val) {
+
+                if (cart.isCGB()) {
+
+                    currWramBank = val & 0x7;
+                    if (currWramBank == 0)
+                        currWramBank++;
+                    mapWram();
+                }
+                io[SVBK] = val;
+            }
+        };
+    }
+
+    /**
+     * Handles a write of val to HDMA5 and returns the value HDMA5 takes.
+     */
+    private int startHdma(int val) {
+
+        sourceAddr = (io[HDMA1] << 8) | (io[HDMA2] & 0xF0);
+
+        destAddr = ((io[HDMA3] & 0x1F) << 8) | (io[HDMA4] & 0xF0);
+
+        if ((val & 0x80) == 0) {
+
+            if ((io[HDMA5] & 0x80) == 0) {
+
+                val |= 0x80;
+
+            } else {
+
+                int blocks = (val & 0x7F) + 1;
+
+                copyToVram(blocks * HDMA_BLOCK_SIZE);
+                dmaStallCycles += blocks * HDMA_BLOCK_CYCLES;
+
+                val = 0xFF;
+            }
+
+        } else {
+
+            val &= ~0x80;
+        }
+
+        return val;
+    }
 
     public void powerUp() {
 
@@ -151,638 +468,560 @@ public class MemoryMap {
         io[WY] = 0x00;
         io[WX] = 0x00;
         io[HDMA5] = 0xFF;
-        IE = 0x00;
+        interrupts.reset();
 
         divTimer = 0;
         timaTimer = 0;
 
         currVramBank = 0;
         currWramBank = 1;
+        tileCache.invalidateAll();
+
+        oamDmaRemaining = 0;
+        mapRomBanks();
+        mapCartRam();
+        mapVram();
+        mapWram();
 
         for (int i = 0; i < 40; i++) {
 
             sprites[i] = new Sprite(i);
         }
 
-        sourceAddr = new Word();
-        destAddr = new Word();
+        sourceAddr = 0;
+        destAddr = 0;
+        dmaStallCycles = 0;
     }
 
-    public int readSignedByte(Word addr) {
+    /**
+     * Points 0x0000-0x7FFF at the ROM banks the cartridge's controller has
+     * selected.
+     */
+    private void mapRomBanks() {
 
-        int val = readByte(addr);
+        Mapper mapper = cart.getMapper();
+        mapPages(0x00, 0x40, mapper.getFixedRomPage(), 0, false);
+        mapPages(0x40, 0x40, mapper.getRomPage(), 0, false);
+        bankVersion++;
+    }
 
-        if (val > 127)
-            val -= 256;
+    /**
+     * Points 0xA000-0xBFFF at the current cartridge RAM bank, if RAM is
+     * enabled and the controller has no special handling for it.
+     */
+    private void mapCartRam() {
 
-        return val;
+        Mapper mapper = cart.getMapper();
+        mapPages(0xA0, 0x20, mapper.getRamBank(), mapper.getRamOffset(), true);
     }
 
-    public int readByte(Word addr) {
+    /**
+     * Points 0x8000-0x9FFF at the current VRAM bank. Writes to the tile data
+     * below 0x9800 go through writeUnmapped, so the tile cache sees them.
+     */
+    private void mapVram() {
 
-        int val = 0;
+        mapPages(0x80, 0x18, vram[currVramBank], 0, false);
+        mapPages(0x98, 0x08, vram[currVramBank], TileCache.TILE_DATA_SIZE, true);
+    }
 
-        switch (addr.getWord() & 0xF000) {
+    /**
+     * Points WRAM and its echo at 0xE000-0xFDFF at bank 0 and the current
+     * bank.
+     */
+    private void mapWram() {
+
+        mapPages(0xC0, 0x10, wram[0], 0, true);
+        mapPages(0xD0, 0x10, wram[currWramBank], 0, true);
+        mapPages(0xE0, 0x10, wram[0], 0, true);
+        mapPages(0xF0, 0x0E, wram[currWramBank], 0, true);
+        bankVersion++;
+    }
 
-        case 0x0000:
-        case 0x1000:
-        case 0x2000:
-        case 0x3000:
-            val = cart.readRom(0, addr.getWord());
-            break;
+    private void mapPages(int first, int count, byte[] data, int offset, boolean writable) {
 
-        case 0x4000:
-        case 0x5000:
-        case 0x6000:
-        case 0x7000:
-            val = cart.readRom(cart.getCurrRomBank(), addr.getWord() - 0x4000);
-            break;
+        if (oamDmaRemaining > 0) {
 
-        case 0x8000:
-        case 0x9000:
-            val = vram[currVramBank][addr.getWord() - 0x8000];
-            break;
+            // Remapped when the transfer ends
+            return;
+        }
 
-        case 0xA000:
-        case 0xB000:
-            if (!cart.isRamEnabled()) {
+        for (int i = 0; i < count; i++) {
 
-                return 0xFF;
-            }
+            readPages[first + i] = readWatches[first + i] ? null : data;
+            readOffsets[first + i] = offset + (i << 8);
+            writePages[first + i] = writable && !writeWatches[first + i] ? data : null;
+            writeOffsets[first + i] = offset + (i << 8);
+        }
+    }
 
-            switch (cart.getType()) {
+    /**
+     * Returns the ROM, WRAM or HRAM page holding addr for fetching opcodes,
+     * or null elsewhere. Index it with addr - getCodePageStart(addr).
+     */
+    public byte[] getCodePage(int addr) {
 
-            case ROM:
-                val = cart.readRam(addr.getWord() - 0xA000);
-                break;
+        if (oamDmaRemaining > 0 && addr < 0xFF00) {
 
-            case MBC1:
-            case MBC5:
-                val = cart.readRam((cart.getCurrRamBank() * 0x2000) + addr.getWord() - 0xA000);
-                break;
+            return null;
+        } else if (addr < 0x4000) {
 
-            case MBC2:
-                if (addr.getWord() < 0xA200) {
+            return cart.getMapper().getFixedRomPage();
+        } else if (addr < 0x8000) {
 
-                    val = cart.readRam(addr.getWord() - 0xA000) & 0x0F;
-                }
-                break;
-
-            case MBC3:
-
-                switch (cart.getCurrRamBank() & 0xF) {
-                case 0x0:
-                case 0x1:
-                case 0x2:
-                case 0x3:
-                    val = cart.readRam((cart.getCurrRamBank() * 0x2000) + addr.getWord() - 0xA000);
-                    break;
-                case 0x8:
-                    val = cart.getRtcLatchSeconds();
-                    break;
-                case 0x9:
-                    val = cart.getRtcLatchMinutes();
-                    break;
-                case 0xA:
-                    val = cart.getRtcLatchHours();
-                    break;
-                case 0xB:
-                    val = (cart.getRtcLatchDays() & 0xFF);
-                    break;
-                case 0xC:
-                    int temp = (cart.getRtcLatchDays() & 0x100) >> 8;
-                    if (cart.isRtcCarry()) {
-                        temp |= 0x80;
-                    }
-                    if (cart.isRtcHalt()) {
-                        temp |= 0x40;
-                    }
-                    break;
-                }
+            return cart.getMapper().getRomPage();
+        } else if (addr >= 0xC000 && addr < 0xD000) {
 
-                break;
+            return wram[0];
+        } else if (addr >= 0xD000 && addr < 0xE000) {
 
-            default:
-                val = cart.readRam(addr.getWord() - 0xA000);
-                break;
-            }
-            break;
+            return wram[currWramBank];
+        } else if (addr >= 0xFF80 && addr < 0xFFFF) {
 
-        case 0xC000:
-            val = wram[0][addr.getWord() - 0xC000];
-            break;
-        case 0xD000:
-            val = wram[currWramBank][addr.getWord() - 0xD000];
-            break;
+            return hram;
+        }
 
-        case 0xE000:
-            val = wram[0][addr.getWord() - 0xE000];
-            break;
+        return null;
+    }
 
-        case 0xF000:
+    public static int getCodePageStart(int addr) {
 
-            if (addr.getWord() < 0xFE00) {
+        if (addr < 0x8000) {
 
-                val = wram[currWramBank][addr.getWord() - 0xF000];
+            return addr & 0xC000;
+        } else if (addr < 0xFF80) {
 
-            } else if (addr.getWord() < 0xFEA0) {
+            return addr & 0xF000;
+        }
 
-                val = oam[addr.getWord() - 0xFE00];
+        return 0xFF80;
+    }
 
-            } else if (addr.getWord() < 0xFF00) {
+    /**
+     * Returns the bytes taken by each emulated memory area of this instance,
+     * one line per area, and the total.
+     */
+    public String getFootprintReport() {
+
+        long rom = cart.getRomFootprint();
+        long ram = cart.getRam() != null ? cart.getRam().length : 0;
+        long video = (long) vram.length * vram[0].length;
+        long work = (long) wram.length * wram[0].length;
+        long registers = 4L * (io.length + bgPalette.length + obPalette.length);
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-16s %10d%n", "ROM banks used", rom));
+        report.append(String.format("%-16s %10d%n", "Cartridge RAM", ram));
+        report.append(String.format("%-16s %10d%n", "VRAM", video));
+        report.append(String.format("%-16s %10d%n", "WRAM", work));
+        report.append(String.format("%-16s %10d%n", "OAM", oam.length));
+        report.append(String.format("%-16s %10d%n", "HRAM", hram.length));
+        report.append(String.format("%-16s %10d%n", "I/O and palettes", registers));
+        report.append(String.format("%-16s %10d%n", "Total",
+                rom + ram + video + work + oam.length + hram.length + registers));
+
+        return report.toString();
+    }
 
-                // Not used
+    public int getBankVersion() {
 
-            } else if (addr.getWord() == 0xFF00) {
+        return bankVersion;
+    }
 
-                if ((~io[JOYP] & (1 << 4)) == (1 << 4)) {
+    public int readSignedByte(int addr) {
 
-                    return (joyDirection | 0xF0);
-                } else if ((~io[JOYP] & (1 << 5)) == (1 << 5)) {
+        int val = readByte(addr);
 
-                    return (joyButton | 0xF0);
-                }
+        if (val > 127)
+            val -= 256;
 
-            } else if (addr.getWord() < 0xFF80) {
+        return val;
+    }
 
-                val = io[addr.getWord() - 0xFF00];
+    public int readByte(int addr) {
 
-                if ((addr.getWord() - 0xFF00) == BGPD) {
+        int page = addr >> 8;
+        byte[] data = readPages[page];
+        if (data != null) {
 
-                    val = bgPalette[io[BGPI] & 0x3F];
-                }
+            return data[readOffsets[page] + (addr & 0xFF)] & 0xFF;
+        }
 
-                if ((addr.getWord() - 0xFF00) == OBPD) {
+        if (readWatches[page]) {
 
-                    val = obPalette[io[OBPI] & 0x3F];
-                }
+            int val = readUnmapped(addr);
+            debugger.memoryRead(addr, val);
 
-            } else if (addr.getWord() < 0xFFFF) {
+            return val;
+        }
 
-                val = hram[addr.getWord() - 0xFF80];
-            } else {
+        return readUnmapped(addr);
+    }
 
-                val = IE;
+    /**
+     * Reads addr like readByte, without reporting it to the debugger.
+     */
+    int peekByte(int addr) {
 
-            }
+        int page = addr >> 8;
+        byte[] data = readPages[page];
+        if (data != null) {
 
-            break;
-
-        default:
-            System.out.println("Attempting to read from unrecognized address: "
-                    + Integer.toHexString(addr.getWord()));
-            break;
+            return data[readOffsets[page] + (addr & 0xFF)] & 0xFF;
         }
 
-        return (val & 0xFF);
+        return readUnmapped(addr);
     }
 
-    public void writeByte(Word addr, int val) {
+    private int readUnmapped(int addr) {
 
-        val &= 0xFF;
+        if (oamDmaRemaining > 0 && addr < 0xFF00) {
 
-        switch (addr.getWord() & 0xF000) {
+            return 0xFF;
+        }
 
-        case 0x0000:
-        case 0x1000:
-            switch (cart.getType()) {
+        int val = 0;
 
-            case MBC1:
-            case MBC3:
-            case MBC5:
-                if ((val & 0xF) == 0xA) {
+        switch (addr & 0xF000) {
 
-                    cart.enableRam();
-                } else {
+        case 0x0000:
+        case 0x1000:
+        case 0x2000:
+        case 0x3000:
+            val = cart.readRom(cart.getFixedRomBank(), addr);
+            break;
 
-                    cart.disableRam();
-                }
-                break;
+        case 0x4000:
+        case 0x5000:
+        case 0x6000:
+        case 0x7000:
+            val = cart.readRom(cart.getCurrRomBank(), addr - 0x4000);
+            break;
 
-            case MBC2:
-                if ((addr.getWord() & 0x0100) == 0x0) {
-                    if ((val & 0xF) == 0xA) {
+        case 0x8000:
+        case 0x9000:
+            val = vram[currVramBank][addr - 0x8000];
+            break;
 
-                        cart.enableRam();
-                    } else {
+        case 0xA000:
+        case 0xB000:
+            val = cart.getMapper().readRam(addr - 0xA000);
+            break;
 
-                        cart.disableRam();
-                    }
-                }
-                break;
+        case 0xC000:
+            val = wram[0][addr - 0xC000];
+            break;
+        case 0xD000:
+            val = wram[currWramBank][addr - 0xD000];
+            break;
 
-            default:
-                break;
-            }
+        case 0xE000:
+            val = wram[0][addr - 0xE000];
             break;
 
-        case 0x2000:
-        case 0x3000:
-            switch (cart.getType()) {
+        case 0xF000:
 
-            case MBC1:
-                val &= 0x1F;
-                if (val == 0) {
+            if (addr < 0xFE00) {
 
-                    val++;
-                }
-                cart.setCurrRomBank((cart.getCurrRomBank() & 0x60) | val);
-                break;
+                val = wram[currWramBank][addr - 0xF000];
 
-            case MBC2:
-                if ((addr.getWord() & 0x0100) == 0x0) {
-                    cart.setCurrRomBank(val & 0x0F);
-                }
-                break;
+            } else if (addr < 0xFEA0) {
 
-            case MBC3:
-                val &= 0x7F;
-                if (val == 0) {
+                val = oam[addr - 0xFE00];
 
-                    val++;
-                }
-                cart.setCurrRomBank(val);
-                break;
+            } else if (addr < 0xFF00) {
 
-            case MBC5:
-                if (addr.getWord() < 0x3000) {
+                // Not used
 
-                    cart.setCurrRomBank((cart.getCurrRomBank() & 0x100) | (val & 0xFF));
-                } else {
+            } else if (addr < 0xFF80) {
 
-                    cart.setCurrRomBank((cart.getCurrRomBank() & 0xFF) | ((val & 0x1) << 8));
-                }
-                break;
+                syncIo();
+                val = ioHandlers[addr - 0xFF00].read(addr - 0xFF00);
 
-            default:
-                break;
-            }
-            break;
+            } else if (addr < 0xFFFF) {
 
-        case 0x4000:
-        case 0x5000:
-            switch (cart.getType()) {
+                val = hram[addr - 0xFF80];
+            } else {
 
-            case MBC1:
-                if (cart.isRomMode()) {
+                val = interrupts.getIE();
 
-                    cart.setCurrRomBank((cart.getCurrRomBank() & 0x1F)
-                            | ((val & 0x03) << 5));
+            }
 
-                    if (cart.getCurrRomBank() == 0x20
-                            || cart.getCurrRomBank() == 0x40
-                            || cart.getCurrRomBank() == 0x60) {
+            break;
 
-                        cart.setCurrRomBank(cart.getCurrRomBank() + 1);
-                    }
-                } else {
+        default:
+            System.out.println("Attempting to read from unrecognized address: "
+                    + Integer.toHexString(addr));
+            break;
+        }
 
-                    cart.setCurrRamBank(val & 0x03);
-                }
-                break;
+        return (val & 0xFF);
+    }
 
-            case MBC3:
-            case MBC5:
-                cart.setCurrRamBank(val & 0xF);
-                break;
+    public void writeByte(int addr, int val) {
 
-            default:
-                break;
-            }
-            break;
+        int page = addr >> 8;
+        byte[] data = writePages[page];
+        if (data != null) {
 
-        case 0x6000:
-        case 0x7000:
-            switch (cart.getType()) {
+            data[writeOffsets[page] + (addr & 0xFF)] = (byte) val;
+            return;
+        }
 
-            case MBC1:
-                if ((val & 0x1) == 0x0) {
+        writeUnmapped(addr, val);
 
-                    cart.setToRomMode();
-                } else {
+        if (writeWatches[page]) {
 
-                    cart.setToRamMode();
-                }
-                break;
+            debugger.memoryWritten(addr, val & 0xFF);
+        }
+    }
 
-            case MBC3:
-                if (cart.isRamEnabled()) {
+    private void writeUnmapped(int addr, int val) {
 
-                    if (val == 0x01) {
+        if (oamDmaRemaining > 0 && addr < 0xFF00) {
 
-                        cart.setRtcLatch(Calendar.getInstance().compareTo(cart.getStartTime()));
-                    } else if (val == 0x00) {
+            return;
+        }
 
-                        cart.setRtcLatchEnabled(true);
-                    } else {
+        val &= 0xFF;
 
-                        cart.setRtcLatchEnabled(false);
-                    }
-                }
-                break;
+        switch (addr & 0xF000) {
 
-            default:
-                break;
-            }
+        case 0x0000:
+        case 0x1000:
+        case 0x2000:
+        case 0x3000:
+        case 0x4000:
+        case 0x5000:
+        case 0x6000:
+        case 0x7000:
+            cart.getMapper().writeControl(addr, val);
+            mapRomBanks();
+            mapCartRam();
             break;
 
         case 0x8000:
         case 0x9000:
-            vram[currVramBank][addr.getWord() - 0x8000] = val;
+            vram[currVramBank][addr - 0x8000] = (byte) val;
+            tileCache.invalidate(currVramBank, addr - 0x8000);
             break;
 
         case 0xA000:
         case 0xB000:
-            if (!cart.isRamEnabled()) {
-
-                return;
-            }
-            switch (cart.getType()) {
-            case ROM:
-                cart.writeRam(addr.getWord() - 0xA000, val);
-                break;
-
-            case MBC1:
-            case MBC5:
-                cart.writeRam(
-                        (cart.getCurrRamBank() * 0x2000)
-                                + addr.getWord() - 0xA000, val);
-                break;
-
-            case MBC2:
-                if (addr.getWord() < 0xA200) {
-
-                    cart.writeRam(addr.getWord() - 0xA000, (val & 0x0F));
-                }
-                break;
-
-            case MBC3:
-                switch (cart.getCurrRamBank() & 0xF) {
-                case 0x0:
-                case 0x1:
-                case 0x2:
-                case 0x3:
-                    cart.writeRam((cart.getCurrRamBank() * 0x2000) + addr.getWord() - 0xA000, val);
-                    break;
-                case 0x8:
-                    cart.setRtcLatchSeconds(val);
-                    break;
-                case 0x9:
-                    cart.setRtcLatchMinutes(val);
-                    break;
-                case 0xA:
-                    cart.setRtcLatchHours(val);
-                    break;
-                case 0xB:
-                    cart.setRtcLatchDays((cart.getRtcLatchDays() & 0x100) | (val & 0xFF));
-                    break;
-                case 0xC:
-                    cart.setRtcLatchDays((cart.getRtcLatchDays() & 0xFF) | ((val & 0x1) << 8));
-                    boolean isHalt = (val & 0x40) == 0x40;
-                    cart.setRtcCarry((val & 0x80) == 0x80);
-                    if (isHalt)
-                        cart.setRtcHaltTime(cart.getRtcLatch());
-                    if (cart.isRtcHalt() && !isHalt)
-                    {
-                        long haltTime = cart.getRtcLatch() - cart.getRtcHaltTime();
-                        cart.getStartTime().setTimeInMillis(cart.getStartTime().getTimeInMillis() + haltTime);
-                    }
-                    cart.setRtcHalt(isHalt);
-                    break;
-                }
-
-                break;
-
-            default:
-                cart.writeRam(addr.getWord() - 0xA000, val);
-                break;
-            }
+            cart.getMapper().writeRam(addr - 0xA000, val);
             break;
 
         case 0xC000:
-            wram[0][addr.getWord() - 0xC000] = val;
+            wram[0][addr - 0xC000] = (byte) val;
             break;
         case 0xD000:
-            wram[currWramBank][addr.getWord() - 0xD000] = val;
+            wram[currWramBank][addr - 0xD000] = (byte) val;
             break;
 
         case 0xE000:
-            wram[0][addr.getWord() - 0xE000] = val;
+            wram[0][addr - 0xE000] = (byte) val;
             break;
 
         case 0xF000:
 
-            if (addr.getWord() < 0xFE00) {
-
-                wram[currWramBank][addr.getWord() - 0xF000] = val;
-
-            } else if (addr.getWord() < 0xFEA0) {
-
-                oam[addr.getWord() - 0xFE00] = val;
-                updateSprite(addr.getWord() - 0xFE00, val);
-
-            } else if (addr.getWord() < 0xFF00) {
+            if (addr < 0xFE00) {
 
-            } else if (addr.getWord() < 0xFF80) {
+                wram[currWramBank][addr - 0xF000] = (byte) val;
 
-                int ioAddr = (addr.getWord() - 0xFF00) & 0xFF;
+            } else if (addr < 0xFEA0) {
 
-                // SB
-                if (ioAddr == SB) {
-                    System.out.print((char) val);
-                }
+                oam[addr - 0xFE00] = (byte) val;
+                updateSprite(addr - 0xFE00, val);
 
-                // DIV
-                if (ioAddr == DIV) {
+            } else if (addr < 0xFF00) {
 
-                    val = 0x0;
-                    divTimer = 0;
-                }
+            } else if (addr < 0xFF80) {
 
-                // TAC
-                if (ioAddr == TAC) {
+                syncIo();
+                ioWritten = true;
 
-                    val &= 0x07;
-                    if (((val & 0x3) != (io[TAC] & 0x3)) || ((val & 0x4) == 0)) {
+                ioHandlers[addr - 0xFF00].write(addr - 0xFF00, val);
 
-                        timaTimer = 0;
-                        io[TIMA] = io[TMA];
-                    }
-                }
+            } else if (addr < 0xFFFF) {
 
-                // IF
-                if (ioAddr == IF) {
-                    val |= 0xE0;
-                }
-
-                // STAT
-                if (ioAddr == STAT) {
-
-                    val = (val & ~0x07) | (io[STAT] & 0x07);
-                }
+                hram[addr - 0xFF80] = (byte) val;
 
-                // LY
-                if (ioAddr == LY) {
-
-                    val = 0x0;
-                }
-
-                // LCDC
-                if (ioAddr == LCDC) {
-
-                    boolean screenOn = (val & 0x80) == 0x80;
-                    if (isScreenOn() && !screenOn) {
-                        io[LY] = 0;
-                        io[STAT] &= ~0x03;
-
-                        checkLYC();
+            } else {
 
-                        // reset lcdModeTimer;
-                    } else if (!isScreenOn() && screenOn) {
+                interrupts.setIE(val);
 
-                        // reset lcdModeTimer;
-                    }
-                }
+            }
 
-                if (ioAddr == DMA) {
+            break;
 
-                    for (int c = 0x00; c <= 0x9F; c++) {
+        default:
+            System.out.println("Attempting to read from unrecognized address: "
+                    + Integer.toHexString(addr));
+            break;
+        }
 
-                        Word tempAddr = new Word();
-                        tempAddr.setHighByte(val);
-                        tempAddr.setLowByte(c);
-                        oam[c] = readByte(tempAddr);
-                        updateSprite(c, oam[c]);
-                    }
-                }
+    }
 
-                if (ioAddr == VBK && cart.isCGB()) {
+    /**
+     * Copies the OAM_SIZE bytes at page << 8 into dest, as one block if the
+     * page is mapped straight onto an array.
+     */
+    private void copyOamDmaSource(int page, byte[] dest) {
 
-                    currVramBank = val & 0x1;
-                }
+        byte[] data = readPages[page];
+        if (data != null) {
 
-                // NEW DMA for CGB
-                if (ioAddr == HDMA5 && cart.isCGB()) {
+            System.arraycopy(data, readOffsets[page], dest, 0, OAM_SIZE);
+        } else {
 
-                    sourceAddr.setHighByte(io[HDMA1]);
-                    sourceAddr.setLowByte(io[HDMA2] & 0xF0);
+            for (int c = 0; c < OAM_SIZE; c++) {
 
-                    destAddr.setHighByte((io[HDMA3] & 0x1F));
-                    destAddr.setLowByte(io[HDMA4] & 0xF0);
+                dest[c] = (byte) readByte((page << 8) | c);
+            }
+        }
+    }
 
-                    if ((val & 0x80) == 0) {
+    /**
+     * Copies length bytes from sourceAddr to destAddr in the current VRAM
+     * bank and advances both.
+     */
+    private void copyToVram(int length) {
 
-                        if ((io[HDMA5] & 0x80) == 0) {
+        byte[] dest = vram[currVramBank];
 
-                            val |= 0x80;
+        while (length > 0) {
 
-                        } else {
+            int chunk = Math.min(length, 0x100 - (sourceAddr & 0xFF));
+            chunk = Math.min(chunk, dest.length - destAddr);
 
-                            int len = (((val & 0x7F) + 1) << 4);
+            int page = sourceAddr >> 8;
+            byte[] data = readPages[page];
+            if (data != null && data != dest) {
 
-                            for (int c = 0; c < len; c++) {
+                System.arraycopy(data, readOffsets[page] + (sourceAddr & 0xFF), dest, destAddr, chunk);
+            } else {
 
-                                vram[currVramBank][destAddr.getWord()] = readByte(sourceAddr);
-                                destAddr.inc();
-                                sourceAddr.inc();
-                            }
+                // Unmapped pages, and VRAM onto itself where a block copy
+                // could overlap
+                for (int i = 0; i < chunk; i++) {
 
-                            val = 0xFF;
-                        }
+                    dest[destAddr + i] = (byte) readByte(sourceAddr + i);
+                }
+            }
+            tileCache.invalidate(currVramBank, destAddr, chunk);
 
-                    } else {
+            sourceAddr = (sourceAddr + chunk) & 0xFFFF;
+            destAddr = (destAddr + chunk) & 0x1FFF;
+            length -= chunk;
+        }
+    }
 
-                        val &= ~0x80;
-                    }
+    /**
+     * Returns the cycles the CPU has been stopped by general purpose VRAM
+     * DMA since the last call, for the devices to catch up on.
+     */
+    public int takeDmaStallCycles() {
 
-                }
+        int cycles = dmaStallCycles;
+        dmaStallCycles = 0;
 
-                if ((addr.getWord() - 0xFF00) == BGPD) {
+        return cycles;
+    }
 
-                    bgPalette[io[BGPI] & 0x3F] = val;
+    private void startTimedOamDma(int page) {
 
-                    if ((io[BGPI] & 0x80) == 0x80) {
+        // A transfer restarted mid-way reads its source through
+        // readUnmapped, so lift the block first
+        oamDmaRemaining = 0;
+        copyOamDmaSource(page, oamDmaBuffer);
 
-                        io[BGPI]++;
-                        io[BGPI] &= ~0x40;
-                    }
-                }
+        mapPages(0x00, 0xFF, null, 0, false);
+        oamDmaCopied = 0;
+        oamDmaRemaining = OAM_DMA_CYCLES;
+        bankVersion++;
+    }
 
-                if ((addr.getWord() - 0xFF00) == OBPD) {
+    /**
+     * Advances a timed OAM DMA by cyclesRun, copying the bytes due so far.
+     * Maps memory back in once the transfer is done.
+     */
+    public void updateOamDma(int cyclesRun) {
 
-                    obPalette[io[OBPI] & 0x3F] = val;
+        if (oamDmaRemaining == 0) {
 
-                    if ((io[OBPI] & 0x80) == 0x80) {
+            return;
+        }
 
-                        io[OBPI]++;
-                        io[OBPI] &= ~0x40;
-                    }
-                }
+        oamDmaRemaining = Math.max(0, oamDmaRemaining - cyclesRun);
 
-                if (ioAddr == SVBK && cart.isCGB()) {
+        int copied = (OAM_DMA_CYCLES - oamDmaRemaining) / 4;
+        System.arraycopy(oamDmaBuffer, oamDmaCopied, oam, oamDmaCopied, copied - oamDmaCopied);
+        decodeSprites(oamDmaCopied, copied);
+        oamDmaCopied = copied;
 
-                    currWramBank = val & 0x7;
-                    if (currWramBank == 0)
-                        currWramBank++;
-                }
+        if (oamDmaRemaining == 0) {
 
-                io[ioAddr] = val;
+            mapRomBanks();
+            mapCartRam();
+            mapVram();
+            mapWram();
+        }
+    }
 
-                // LYC
-                if (ioAddr == LYC) {
+    /**
+     * Returns how many cycles are left of a timed OAM DMA, or
+     * Integer.MAX_VALUE if none is running.
+     */
+    public int getCyclesToOamDmaEnd() {
 
-                    checkLYC();
-                }
+        return oamDmaRemaining > 0 ? oamDmaRemaining : Integer.MAX_VALUE;
+    }
 
-            } else if (addr.getWord() < 0xFFFF) {
+    /**
+     * Spreads OAM DMA over 160 M-cycles, blocking memory below 0xFF00 until
+     * it ends, instead of copying at once. Off by default.
+     */
+    public void setTimedOamDmaEnabled(boolean enabled) {
 
-                hram[addr.getWord() - 0xFF80] = val;
+        timedOamDma = enabled;
+    }
 
-            } else {
+    public boolean isTimedOamDmaEnabled() {
 
-                IE = val;
+        return timedOamDma;
+    }
 
-            }
+    private void decodeSprites(int start, int end) {
 
-            break;
+        for (int c = start; c < end; c++) {
 
-        default:
-            System.out.println("Attempting to read from unrecognized address: "
-                    + Integer.toHexString(addr.getWord()));
-            break;
+            updateSprite(c, oam[c]);
         }
-
     }
 
+    /**
+     * Decodes a write to OAM into the sprite it belongs to. Sprites stay in
+     * OAM order, the renderer picks and orders those on each line.
+     */
     private void updateSprite(int addr, int val) {
 
         val &= 0xFF;
-        int index = addr >> 2;
-        int i;
-        for (i = 0; i < 40; i++) {
-
-            if (sprites[i].getIndex() == index) {
-
-                break;
-            }
-        }
+        Sprite sprite = sprites[addr >> 2];
 
         switch (addr & 0x3) {
         case 0:
-            sprites[i].setY(val);
+            sprite.setY(val);
             break;
         case 1:
-            sprites[i].setX(val);
-            Arrays.sort(sprites);
+            sprite.setX(val);
             break;
         case 2:
-            sprites[i].setTileNum(val);
+            sprite.setTileNum(val);
             break;
         case 3:
-            sprites[i].setAttributeFlags(val);
+            sprite.setAttributeFlags(val);
             break;
         }
-
     }
 
     public Cartridge getCart() {
@@ -795,35 +1034,20 @@ public class MemoryMap {
         return (io[LCDC] & 0x80) == 0x80;
     }
 
-    public boolean isInterruptTriggered() {
-
-        return (IE & io[IF]) != 0;
-    }
-
-    public boolean isInterruptEnabled(Interrupt interrupt) {
-
-        return (IE & interrupt.getMask()) == interrupt.getMask();
-    }
-
-    public boolean isInterruptSet(Interrupt interrupt) {
-
-        return (io[IF] & interrupt.getMask()) == interrupt.getMask();
-    }
-
     public void setInterrupt(Interrupt interrupt) {
 
-        io[IF] |= interrupt.getMask();
+        interrupts.request(interrupt);
     }
 
-    public void disableInterrupt(Interrupt interrupt) {
+    public InterruptController getInterrupts() {
 
-        io[IF] &= ~interrupt.getMask();
+        return interrupts;
     }
 
     public void incDIVTimer(int cyclesRun) {
 
         divTimer += cyclesRun;
-        if (divTimer >= DIV_RATE) {
+        while (divTimer >= DIV_RATE) {
 
             divTimer -= DIV_RATE;
             incDIV();
@@ -858,6 +1082,75 @@ public class MemoryMap {
 
     }
 
+    /**
+     * Sets a callback that is run before every access to the I/O registers,
+     * so that devices updated in batches can catch up first.
+     */
+    public void setIoSync(Runnable ioSync) {
+
+        this.ioSync = ioSync;
+    }
+
+    private void syncIo() {
+
+        if (ioSync != null) {
+
+            ioSync.run();
+        }
+    }
+
+    public boolean isIoWritten() {
+
+        return ioWritten;
+    }
+
+    public void clearIoWritten() {
+
+        ioWritten = false;
+    }
+
+    /**
+     * Makes the CPU return from its current batch, as an I/O register write
+     * does.
+     */
+    void endBatch() {
+
+        ioWritten = true;
+    }
+
+    /**
+     * Sets the pages whose reads and writes are reported to debugger, and
+     * maps them out of the page tables. A null debugger watches nothing.
+     */
+    void setWatchedPages(Debugger debugger, boolean[] reads, boolean[] writes) {
+
+        this.debugger = debugger;
+        for (int page = 0; page < 0x100; page++) {
+
+            readWatches[page] = debugger != null && reads[page];
+            writeWatches[page] = debugger != null && writes[page];
+        }
+
+        mapRomBanks();
+        mapCartRam();
+        mapVram();
+        mapWram();
+    }
+
+    /**
+     * Returns how many cycles can pass before TIMA overflows and raises the
+     * timer interrupt, or Integer.MAX_VALUE if the timer is stopped.
+     */
+    public int getCyclesToTimerOverflow() {
+
+        if (!isTimerStart()) {
+
+            return Integer.MAX_VALUE;
+        }
+
+        return ((0x100 - io[TIMA]) * getTacCycles()) - timaTimer;
+    }
+
     public void incTIMA() {
 
         if (io[TIMA] == 0xFF) {
@@ -929,26 +1222,6 @@ public class MemoryMap {
         }
     }
 
-    public int getWindowTileNum(int row, int col) {
-
-        return vram[0][windowTileMapAddress() + (row * 32) + col];
-    }
-
-    public int getBgTileNum(int row, int col) {
-
-        return vram[0][bgTileMapAddress() + (row * 32) + col];
-    }
-
-    public int getWindowTileInfo(int row, int col) {
-
-        return vram[1][windowTileMapAddress() + (row * 32) + col] & 0xFF;
-    }
-
-    public int getBgTileInfo(int row, int col) {
-
-        return vram[1][bgTileMapAddress() + (row * 32) + col] & 0xFF;
-    }
-
     public int objSize() {
 
         return (io[LCDC] & 0x4) == 0x4 ? 16 : 8;
@@ -1045,6 +1318,11 @@ public class MemoryMap {
         return io[OBP1];
     }
 
+    public TileCache getTileCache() {
+
+        return tileCache;
+    }
+
     public Sprite[] getSprites() {
 
         return sprites;
@@ -1166,21 +1444,20 @@ public class MemoryMap {
 
     }
 
+    /**
+     * Copies the next block of an HBlank DMA, if one is running, and returns
+     * how many cycles the CPU is stopped for.
+     */
     public int handleDmaTransfer() {
 
         if ((io[HDMA5] & 0x80) == 0) {
 
-            for (int i = 0; i < 0x10; i++) {
-
-                vram[currVramBank][destAddr.getWord()] = readByte(sourceAddr);
-                destAddr.inc();
-                sourceAddr.inc();
-            }
+            copyToVram(HDMA_BLOCK_SIZE);
 
             io[HDMA5]--;
             io[HDMA5] &= 0xFF;
 
-            return 8;
+            return HDMA_BLOCK_CYCLES;
         }
 
         return 0;
@@ -0,0 +1,265 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.Files;
+
+/**
+ * Counts instructions and cycles per ROM bank and PC, and cycles per call
+ * stack. Addresses outside 0x4000-0x7FFF are reported as bank 0.
+ */
+public class Profiler {
+
+    private static final int BANK_SIZE = 0x4000;
+    private static final int MAX_DEPTH = 256;
+    private static final int ROOT = 0;
+
+    /* Bank 0, RAM and I/O addresses, indexed by PC */
+    private final long[] fixedInstructions = new long[0x10000];
+    private final long[] fixedCycles = new long[0x10000];
+
+    /* Switchable ROM, indexed by bank then PC - 0x4000, allocated on use */
+    private long[][] bankInstructions = new long[0][];
+    private long[][] bankCycles = new long[0][];
+
+    /* Call tree, node 0 is the code run outside any call */
+    private int[] nodeParents = new int[1024];
+    private int[] nodeFrames = new int[1024];
+    private long[] nodeCycles = new long[1024];
+    private int numNodes;
+    private final Map<Long, Integer> children = new HashMap<>();
+
+    /* Open calls, with SP right after the return address was pushed */
+    private final int[] stackNodes = new int[MAX_DEPTH];
+    private final int[] stackSPs = new int[MAX_DEPTH];
+    private int depth;
+    private int currNode;
+
+    public Profiler() {
+
+        reset();
+    }
+
+    public void reset() {
+
+        Arrays.fill(fixedInstructions, 0);
+        Arrays.fill(fixedCycles, 0);
+        bankInstructions = new long[0][];
+        bankCycles = new long[0][];
+
+        children.clear();
+        numNodes = 1;
+        nodeParents[ROOT] = -1;
+        nodeFrames[ROOT] = -1;
+        nodeCycles[ROOT] = 0;
+
+        depth = 0;
+        currNode = ROOT;
+    }
+
+    /**
+     * Counts one instruction, or one fused sequence, starting at addr.
+     */
+    void record(int bank, int addr, int cycles) {
+
+        if (addr >= BANK_SIZE && addr < 0x8000) {
+
+            if (bank >= bankCycles.length) {
+
+                bankInstructions = Arrays.copyOf(bankInstructions, bank + 1);
+                bankCycles = Arrays.copyOf(bankCycles, bank + 1);
+            }
+
+            if (bankCycles[bank] == null) {
+
+                bankInstructions[bank] = new long[BANK_SIZE];
+                bankCycles[bank] = new long[BANK_SIZE];
+            }
+
+            bankInstructions[bank][addr - BANK_SIZE]++;
+            bankCycles[bank][addr - BANK_SIZE] += cycles;
+        } else {
+
+            fixedInstructions[addr]++;
+            fixedCycles[addr] += cycles;
+        }
+
+        nodeCycles[currNode] += cycles;
+    }
+
+    /**
+     * A return address was pushed and execution continues at addr.
+     */
+    void enter(int bank, int addr, int sp) {
+
+        // A return address at SP overwrites that of an abandoned call
+        while (depth > 0 && stackSPs[depth - 1] <= sp) {
+
+            depth--;
+            currNode = stackNodes[depth];
+        }
+
+        if (depth == MAX_DEPTH) {
+
+            return;
+        }
+
+        int frame = getFrame(bank, addr);
+        long key = ((long) currNode << 32) | frame;
+        Integer node = children.get(key);
+        if (node == null) {
+
+            node = addNode(currNode, frame);
+            children.put(key, node);
+        }
+
+        stackNodes[depth] = currNode;
+        stackSPs[depth] = sp;
+        depth++;
+        currNode = node;
+    }
+
+    /**
+     * SP moved to sp. Closes every call whose return address is now above
+     * the top of the stack.
+     */
+    void leave(int sp) {
+
+        while (depth > 0 && stackSPs[depth - 1] < sp) {
+
+            depth--;
+            currNode = stackNodes[depth];
+        }
+    }
+
+    /**
+     * Returns the limit hottest addresses by cycles, with their instruction
+     * counts and share of all cycles.
+     */
+    public String getHotspotReport(int limit) {
+
+        List<long[]> hotspots = new ArrayList<>();
+        long total = 0;
+
+        for (int addr = 0; addr < fixedCycles.length; addr++) {
+
+            if (fixedInstructions[addr] != 0) {
+
+                hotspots.add(new long[] { 0, addr, fixedInstructions[addr], fixedCycles[addr] });
+                total += fixedCycles[addr];
+            }
+        }
+
+        for (int bank = 0; bank < bankCycles.length; bank++) {
+
+            if (bankCycles[bank] == null) {
+
+                continue;
+            }
+
+            for (int i = 0; i < BANK_SIZE; i++) {
+
+                if (bankInstructions[bank][i] != 0) {
+
+                    hotspots.add(new long[] { bank, BANK_SIZE + i, bankInstructions[bank][i],
+                            bankCycles[bank][i] });
+                    total += bankCycles[bank][i];
+                }
+            }
+        }
+
+        Collections.sort(hotspots, new Comparator<long[]>() {
+
+            @Override
+            public int compare(long[] a, long[] b) {
+
+                return Long.compare(b[3], a[3]);
+            }
+        });
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-8s %14s %16s %8s%n", "bank:pc", "instructions", "cycles", "share"));
+
+        for (int i = 0; i < Math.min(limit, hotspots.size()); i++) {
+
+            long[] hotspot = hotspots.get(i);
+            report.append(String.format("%02X:%04X  %14d %16d %7.2f%%%n", hotspot[0], hotspot[1],
+                    hotspot[2], hotspot[3], 100.0 * hotspot[3] / total));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Returns the cycles spent in each call stack, in the collapsed format
+     * read by flame graph tools.
+     */
+    public String getCollapsedStacks() {
+
+        StringBuilder stacks = new StringBuilder();
+        for (int node = 0; node < numNodes; node++) {
+
+            if (nodeCycles[node] == 0) {
+
+                continue;
+            }
+
+            stacks.append(getStackName(node)).append(' ').append(nodeCycles[node]).append('\n');
+        }
+
+        return stacks.toString();
+    }
+
+    public void writeCollapsedStacks(File file) throws IOException {
+
+        Files.write(getCollapsedStacks(), file, StandardCharsets.UTF_8);
+    }
+
+    private String getStackName(int node) {
+
+        if (node == ROOT) {
+
+            return "main";
+        }
+
+        int frame = nodeFrames[node];
+
+        return getStackName(nodeParents[node])
+                + String.format(";%02X:%04X", frame >>> 16, frame & 0xFFFF);
+    }
+
+    private int getFrame(int bank, int addr) {
+
+        if (addr < BANK_SIZE || addr >= 0x8000) {
+
+            bank = 0;
+        }
+
+        return (bank << 16) | addr;
+    }
+
+    private int addNode(int parent, int frame) {
+
+        if (numNodes == nodeParents.length) {
+
+            nodeParents = Arrays.copyOf(nodeParents, numNodes * 2);
+            nodeFrames = Arrays.copyOf(nodeFrames, numNodes * 2);
+            nodeCycles = Arrays.copyOf(nodeCycles, numNodes * 2);
+        }
+
+        nodeParents[numNodes] = parent;
+        nodeFrames[numNodes] = frame;
+        nodeCycles[numNodes] = 0;
+
+        return numNodes++;
+    }
+}
@@ -0,0 +1,18 @@
+package application;
+
+/**
+ * Cartridges without a bank controller, and controllers not emulated yet:
+ * 32KB of ROM and at most one bank of RAM, control writes are ignored.
+ */
+class RomOnlyMapper extends Mapper {
+
+    RomOnlyMapper(Cartridge cart) {
+
+        super(cart);
+    }
+
+    @Override
+    void writeControl(int addr, int val) {
+
+    }
+}
@@ -1,6 +1,9 @@
 package application;
 
-public class Sprite implements Comparable<Sprite> {
+/**
+ * One OAM entry, decoded as it is written.
+ */
+public class Sprite {
 
     private int index;
     private int x;
@@ -97,16 +100,4 @@ public class Sprite implements Comparable<Sprite> {
         return attributeFlags & 0x7;
     }
 
-    @Override
-    public int compareTo(Sprite sprite) {
-
-        if (this.x == sprite.getX()) {
-
-            return sprite.getIndex() - this.index;
-        } else {
-
-            return sprite.getX() - this.x;
-        }
-    }
-
 }
@@ -0,0 +1,112 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * The 384 tiles of each VRAM bank decoded to one color number per byte, 8 by
+ * 8 row by row, along with a horizontally flipped copy of each. The memory
+ * map marks a tile dirty when any of its 16 bytes is written, and it is
+ * decoded again the next time it is asked for.
+ */
+public class TileCache {
+
+    public static final int TILES_PER_BANK = 384;
+    public static final int TILE_DATA_SIZE = TILES_PER_BANK * 16;
+
+    private static final int BANKS = 2;
+
+    private final byte[][] vram;
+
+    private final byte[][] tiles = new byte[BANKS * TILES_PER_BANK][64];
+    private final byte[][] flippedTiles = new byte[BANKS * TILES_PER_BANK][64];
+    private final boolean[] dirty = new boolean[BANKS * TILES_PER_BANK];
+
+    public TileCache(byte[][] vram) {
+
+        this.vram = vram;
+        invalidateAll();
+    }
+
+    /**
+     * Returns tile of bank, indexed by row * 8 + x. The array is reused, so
+     * it is only valid until tile data is written again.
+     */
+    public byte[] getTile(int bank, int tile) {
+
+        int index = bank * TILES_PER_BANK + tile;
+        if (dirty[index]) {
+
+            decode(bank, tile, index);
+        }
+
+        return tiles[index];
+    }
+
+    /**
+     * Returns tile of bank mirrored left to right, laid out as for getTile.
+     */
+    public byte[] getFlippedTile(int bank, int tile) {
+
+        int index = bank * TILES_PER_BANK + tile;
+        if (dirty[index]) {
+
+            decode(bank, tile, index);
+        }
+
+        return flippedTiles[index];
+    }
+
+    /**
+     * Marks the tile holding addr, an offset into VRAM bank, as changed.
+     * Addresses past the tile data are ignored.
+     */
+    void invalidate(int bank, int addr) {
+
+        if (addr < TILE_DATA_SIZE) {
+
+            dirty[bank * TILES_PER_BANK + (addr >> 4)] = true;
+        }
+    }
+
+    /**
+     * Marks the tiles overlapping length bytes from addr in bank as changed.
+     */
+    void invalidate(int bank, int addr, int length) {
+
+        int end = Math.min(addr + length, TILE_DATA_SIZE);
+        for (int tile = addr >> 4; tile << 4 < end; tile++) {
+
+            dirty[bank * TILES_PER_BANK + tile] = true;
+        }
+    }
+
+    void invalidateAll() {
+
+        Arrays.fill(dirty, true);
+    }
+
+    private void decode(int bank, int tile, int index) {
+
+        // Cleared first, so a write while decoding marks it again
+        dirty[index] = false;
+
+        byte[] data = vram[bank];
+        byte[] pixels = tiles[index];
+        byte[] flipped = flippedTiles[index];
+
+        for (int row = 0; row < 8; row++) {
+
+            int data1 = data[tile * 16 + row * 2] & 0xFF;
+            int data2 = data[tile * 16 + row * 2 + 1] & 0xFF;
+
+            for (int x = 0; x < 8; x++) {
+
+                int colorBit = 7 - x;
+                int colorNumber = ((data2 >> colorBit) & 1) << 1 | ((data1 >> colorBit) & 1);
+
+                pixels[row * 8 + x] = (byte) colorNumber;
+                flipped[row * 8 + 7 - x] = (byte) colorNumber;
+            }
+        }
+    }
+}
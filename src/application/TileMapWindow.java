@@ -14,7 +14,11 @@ public class TileMapWindow extends Stage {
 
     private Color[] colors = { Color.rgb(255, 255, 255), Color.rgb(170, 170, 170), Color.rgb(85, 85, 85), Color.rgb(0, 0, 0) };
 
-    public TileMapWindow() {
+    private final MemoryMap mmu;
+
+    public TileMapWindow(MemoryMap mmu) {
+
+        this.mmu = mmu;
 
         this.setTitle("My New Stage Title");
 
@@ -35,23 +39,17 @@ public class TileMapWindow extends Stage {
 
     private void drawTileMap() {
 
-        MemoryMap mmu = MemoryMap.getInstance();
-
         PixelWriter pixelWriter = tileImage.getPixelWriter();
 
-        for (int tileNum = 0; tileNum < 384; tileNum++) {
+        for (int tileNum = 0; tileNum < TileCache.TILES_PER_BANK; tileNum++) {
 
-            int tileAddr = tileNum * 16;
+            byte[] tile = mmu.getTileCache().getTile(0, tileNum);
 
             for (int y = 0; y < 8; y++) {
 
-                int data1 = mmu.vram[0][tileAddr + (y * 2)];
-                int data2 = mmu.vram[0][tileAddr + (y * 2) + 1];
-
                 for (int x = 0; x < 8; x++) {
 
-                    int colorNumber = (data2 & (1 << (7 - x))) != 0 ? 0x2 : 0;
-                    colorNumber |= (data1 & (1 << (7 - x))) != 0 ? 1 : 0;
+                    int colorNumber = tile[y * 8 + x];
 
                     pixelWriter.setColor(((tileNum % 16) * 8) + x, ((tileNum >> 4) * 8) + y, colors[colorNumber]);
                 }
@@ -0,0 +1,125 @@
+package application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed size ring buffer holding the last instructions run, for post-mortem
+ * debugging. Records are written into a direct buffer, so tracing allocates
+ * nothing once the buffer exists. {@link TraceDecoder} renders a dump as
+ * text.
+ *
+ * Each record is RECORD_SIZE bytes, little endian: the cycle count as a
+ * long, then ROM bank (0 outside 0x4000-0x7FFF), PC, AF, BC, DE, HL and SP
+ * as shorts and the opcode as a byte, all taken before the instruction ran.
+ * A dump is a header of MAGIC, the record size and the record count as ints
+ * followed by the records, oldest first.
+ */
+public class TraceBuffer {
+
+    public static final int MAGIC = 0x52544247; // "GBTR"
+    public static final int HEADER_SIZE = 12;
+    public static final int RECORD_SIZE = 24;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    private int next;
+    private boolean wrapped;
+    private long cycles;
+
+    public TraceBuffer(int capacity) {
+
+        this.capacity = capacity;
+        buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void reset() {
+
+        next = 0;
+        wrapped = false;
+        cycles = 0;
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * Returns how many records the buffer holds, at most its capacity.
+     */
+    public int size() {
+
+        return wrapped ? capacity : next;
+    }
+
+    /**
+     * Records an instruction about to run at the current cycle count.
+     */
+    void record(int bank, int pc, int opcode, int af, int bc, int de, int hl, int sp) {
+
+        int pos = next * RECORD_SIZE;
+        buffer.putLong(pos, cycles);
+        buffer.putShort(pos + 8, (short) bank);
+        buffer.putShort(pos + 10, (short) pc);
+        buffer.putShort(pos + 12, (short) af);
+        buffer.putShort(pos + 14, (short) bc);
+        buffer.putShort(pos + 16, (short) de);
+        buffer.putShort(pos + 18, (short) hl);
+        buffer.putShort(pos + 20, (short) sp);
+        buffer.put(pos + 22, (byte) opcode);
+
+        next++;
+        if (next == capacity) {
+
+            next = 0;
+            wrapped = true;
+        }
+    }
+
+    /**
+     * Advances the cycle count stamped on the following records.
+     */
+    void addCycles(int cycles) {
+
+        this.cycles += cycles;
+    }
+
+    public void dump(File file) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(RECORD_SIZE).putInt(size());
+        header.flip();
+
+        ByteBuffer records = buffer.duplicate();
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+
+            FileChannel channel = out.getChannel();
+            write(channel, header);
+
+            if (wrapped) {
+
+                // Oldest records run from next to the end of the buffer
+                records.limit(capacity * RECORD_SIZE).position(next * RECORD_SIZE);
+                write(channel, records);
+            }
+
+            records.limit(next * RECORD_SIZE).position(0);
+            write(channel, records);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer data) throws IOException {
+
+        while (data.hasRemaining()) {
+
+            channel.write(data);
+        }
+    }
+}
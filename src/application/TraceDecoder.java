@@ -0,0 +1,61 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.google.common.io.Files;
+
+/**
+ * Renders a {@link TraceBuffer} dump as text, one instruction per line.
+ * 
+ * Run with: java -cp bin:lib/* application.TraceDecoder trace-file
+ */
+public class TraceDecoder {
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 1) {
+
+            System.out.println("Usage: TraceDecoder trace-file");
+            return;
+        }
+
+        System.out.print(decode(new File(args[0])));
+    }
+
+    public static String decode(File file) throws IOException {
+
+        ByteBuffer data = ByteBuffer.wrap(Files.toByteArray(file)).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.remaining() < TraceBuffer.HEADER_SIZE || data.getInt() != TraceBuffer.MAGIC) {
+
+            throw new IOException("Not a trace file: " + file);
+        }
+
+        int recordSize = data.getInt();
+        int count = data.getInt();
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%14s %-7s %-2s  %-4s %-4s %-4s %-4s %-4s%n", "cycle", "bank:pc", "op", "AF",
+                "BC", "DE", "HL", "SP"));
+
+        for (int i = 0; i < count; i++) {
+
+            int pos = TraceBuffer.HEADER_SIZE + i * recordSize;
+            text.append(String.format("%14d %02X:%04X %02X  %04X %04X %04X %04X %04X%n",
+                    data.getLong(pos),
+                    data.getShort(pos + 8) & 0xFFFF,
+                    data.getShort(pos + 10) & 0xFFFF,
+                    data.get(pos + 22) & 0xFF,
+                    data.getShort(pos + 12) & 0xFFFF,
+                    data.getShort(pos + 14) & 0xFFFF,
+                    data.getShort(pos + 16) & 0xFFFF,
+                    data.getShort(pos + 18) & 0xFFFF,
+                    data.getShort(pos + 20) & 0xFFFF));
+        }
+
+        return text.toString();
+    }
+}
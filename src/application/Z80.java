@@ -1,6 +1,8 @@
 package application;
 
-import application.model.Word;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class Z80 {
 
@@ -9,2600 +11,2278 @@ public class Z80 {
     private static final int H_FLAG = 0x20;
     private static final int C_FLAG = 0x10;
 
-    private Word AF;
-    private Word BC;
-    private Word DE;
-    private Word HL;
-    private Word SP;
-    private Word PC;
+    /* Operations whose flags can be deferred, FLAGS_SET when F is current */
+    private static final int FLAGS_SET = 0;
+    private static final int FLAGS_ADD = 1;
+    private static final int FLAGS_SUB = 2;
+    private static final int FLAGS_AND = 3;
+    private static final int FLAGS_OR = 4;
+    private static final int FLAGS_INC = 5;
+    private static final int FLAGS_DEC = 6;
+
+    /* Instructions kept by the trace buffer */
+    private static final int TRACE_CAPACITY = 0x10000;
+
+    /* LDH A,(n); CP n; JR cc,e is 6 bytes long */
+    private static final int POLL_LOOP_LENGTH = 6;
+    private static final int POLL_LOOP_OFFSET = 0x100 - POLL_LOOP_LENGTH;
+
+    private int A;
+    private int F;
+    private int B;
+    private int C;
+    private int D;
+    private int E;
+    private int H;
+    private int L;
+    private int SP;
+    private int PC;
 
     private boolean stop;
-    private boolean halt;
-    private boolean setIME;
-    private boolean disableIME;
-    private boolean IME;
 
-    private int cyclesRun;
+    private int pollLoopStart = -1;
+    private int pendingCycles;
+    private long cycleCount;
+
+    private boolean lazyFlags;
+    private int flagOp;
+    private int flagA;
+    private int flagVal;
+    private int flagCarry;
 
     private MemoryMap mmu;
+    private InterruptController interrupts;
+
+    private final Instruction[] instructions = new Instruction[0x100];
+    private final Instruction[] cbInstructions = new Instruction[0x100];
+
+    private final Instruction[] fusedInstructions = new Instruction[0x100];
+    private final long[] fusionCounts = new long[Fusion.values().length];
+
+    /*
+     * Set by the fused handlers to the number of instructions they ran.
+     * fusionCycleLimit is how many cycles may pass before the last
+     * instruction of a fused sequence starts, see run().
+     */
+    private int fusedLength;
+    private int fusionCycleLimit = Integer.MAX_VALUE;
+
+    private BlockCache blockCache;
+    private BlockCache.Block currBlock;
+    private int blockIndex;
+
+    /*
+     * Array backing the ROM, WRAM or HRAM page opcodes are fetched from,
+     * covering codeStart up to codeEnd, and the bank version it was taken
+     * at. codeEnd is codeStart if PC is in an area without a direct page.
+     */
+    private byte[] codePage;
+    private int codeStart;
+    private int codeEnd;
+    private int codeVersion;
+
+    private Profiler profiler;
+    private TraceBuffer trace;
+    private boolean traceDumped;
+
+    /* Attached while any watchpoint is set */
+    private Debugger debugger;
+    private int instructionAddr;
 
-    public Z80() {
+    /* Set while the profiler, the trace buffer or the debugger is on */
+    private boolean instrumented;
 
-        mmu = MemoryMap.getInstance();
+    public Z80(MemoryMap mmu) {
+
+        this.mmu = mmu;
+        interrupts = mmu.getInterrupts();
+
+        initInstructions();
+        initCBInstructions();
+        initFusedInstructions();
 
         init();
     }
 
     public void init() {
 
-        halt = false;
+        interrupts.reset();
 
-        setIME = false;
-        disableIME = false;
-        IME = false;
-
-        PC = new Word(0x0100);
-        SP = new Word(0xFFFE);
-        AF = new Word(0x01B0);
+        PC = 0x0100;
+        SP = 0xFFFE;
+        setAF(0x01B0);
         if (mmu.getCart().isCGB()) {
 
-            AF.setHighByte(0x11);
+            A = 0x11;
         }
-        BC = new Word(0x0013);
-        DE = new Word(0x00D8);
-        HL = new Word(0x014D);
-    }
+        setBC(0x0013);
+        setDE(0x00D8);
+        setHL(0x014D);
 
-    public int execute() {
+        pollLoopStart = -1;
+        pendingCycles = 0;
+        cycleCount = 0;
 
-        cyclesRun = 0;
+        codePage = null;
+        codeStart = 0;
+        codeEnd = 0;
 
-        if (!halt) {
+        currBlock = null;
+        if (blockCache != null) {
 
-            int opCode = mmu.readByte(PC);
+            blockCache.clear();
+        }
+    }
 
-            PC.inc();
+    /**
+     * Enables executing ROM code from decoded basic blocks instead of fetching
+     * every opcode through the memory map. Off by default.
+     */
+    public void setBlockCacheEnabled(boolean enabled) {
 
-            cyclesRun += cycles[opCode];
-            executeOpCode(opCode);
-        } else {
+        Arrays.fill(fusionCounts, 0);
+        blockCache = enabled ? new BlockCache(mmu, instructions, cbInstructions,
+                fusedInstructions) : null;
+        currBlock = null;
+    }
 
-            cyclesRun += 4;
-        }
+    public boolean isBlockCacheEnabled() {
 
-        return cyclesRun;
+        return blockCache != null;
     }
 
-    public void checkInterrupts() {
+    /**
+     * Enables deferring the flag computation of the 8 bit ALU operations
+     * until something reads F. Off by default.
+     */
+    public void setLazyFlagsEnabled(boolean enabled) {
 
-        if (mmu.isInterruptTriggered()) {
+        setF(getF());
+        lazyFlags = enabled;
+    }
 
-            halt = false;
+    public boolean isLazyFlagsEnabled() {
 
-            if (IME) {
+        return lazyFlags;
+    }
 
-                IME = false;
-                // PUSH PC
-                SP.dec();
-                mmu.writeByte(SP, PC.getHighByte());
-                SP.dec();
-                mmu.writeByte(SP, PC.getLowByte());
+    /**
+     * Enables counting instructions and cycles per ROM bank and PC, see
+     * {@link #getProfiler()}. Off by default; starts a new profile.
+     */
+    public void setProfilingEnabled(boolean enabled) {
 
-                if (mmu.isInterruptEnabled(Interrupt.V_BLANK)
-                        && mmu.isInterruptSet(Interrupt.V_BLANK)) {
+        profiler = enabled ? new Profiler() : null;
+        instrumented = profiler != null || trace != null || debugger != null;
+    }
 
-                    handleInterrupt(Interrupt.V_BLANK);
+    public boolean isProfilingEnabled() {
 
-                } else if (mmu.isInterruptEnabled(Interrupt.LCD_STAT)
-                        && mmu.isInterruptSet(Interrupt.LCD_STAT)) {
+        return profiler != null;
+    }
 
-                    handleInterrupt(Interrupt.LCD_STAT);
+    /**
+     * Returns the current profile, or null if profiling is off.
+     */
+    public Profiler getProfiler() {
 
-                } else if (mmu.isInterruptEnabled(Interrupt.TIMER)
-                        && mmu.isInterruptSet(Interrupt.TIMER)) {
+        return profiler;
+    }
 
-                    handleInterrupt(Interrupt.TIMER);
+    /**
+     * Enables a ring buffer of recent instructions, see {@link #getTrace()}.
+     * Off by default.
+     */
+    public void setTraceEnabled(boolean enabled) {
 
-                } else if (mmu.isInterruptEnabled(Interrupt.SERIAL)
-                        && mmu.isInterruptSet(Interrupt.SERIAL)) {
+        trace = enabled ? new TraceBuffer(TRACE_CAPACITY) : null;
+        traceDumped = false;
+        instrumented = profiler != null || trace != null || debugger != null;
+    }
 
-                    handleInterrupt(Interrupt.SERIAL);
+    public boolean isTraceEnabled() {
 
-                } else if (mmu.isInterruptEnabled(Interrupt.JOYPAD)
-                        && mmu.isInterruptSet(Interrupt.JOYPAD)) {
+        return trace != null;
+    }
 
-                    handleInterrupt(Interrupt.JOYPAD);
+    /**
+     * Returns the trace buffer, or null if tracing is off.
+     */
+    public TraceBuffer getTrace() {
 
-                }
-            }
-        }
+        return trace;
+    }
 
-        if (setIME) {
-            setIME = false;
-            IME = true;
-        }
+    void setDebugger(Debugger debugger) {
 
-        if (disableIME) {
-            disableIME = false;
-            IME = false;
-        }
+        this.debugger = debugger;
+        instrumented = profiler != null || trace != null || debugger != null;
     }
 
-    private void handleInterrupt(Interrupt interrupt) {
+    boolean isDebuggerAttached() {
 
-        mmu.disableInterrupt(interrupt);
-        PC.setWord(interrupt.getVector());
+        return debugger != null;
     }
 
-    private void executeOpCode(int opCode) {
+    /**
+     * Returns the address of the instruction running, or last run, while
+     * instrumented.
+     */
+    int getInstructionAddress() {
 
-        Word addr = new Word();
-        int carry = 0;
-        int temp = 0;
-        int F = AF.getLowByte();
-
-        switch (opCode & 0xFF) {
+        return instructionAddr;
+    }
 
-        /* NOP */
-        case 0x00:
-        case 0x49:
-        case 0xD3:
-        case 0xDB:
-        case 0xDD:
-        case 0xE3:
-        case 0xE4:
-        case 0xEB:
-        case 0xEC:
-        case 0xED:
-        case 0xF4:
-        case 0xFC:
-        case 0xFD:
-            break;
+    public int getPC() {
 
-        /* ADD A,n */
-        case 0x80:
-            addA(BC.getHighByte());
-            break;
+        return PC;
+    }
 
-        case 0x81:
-            addA(BC.getLowByte());
-            break;
+    public int execute() {
 
-        case 0x82:
-            addA(DE.getHighByte());
-            break;
+        if (interrupts.isHalted()) {
 
-        case 0x83:
-            addA(DE.getLowByte());
-            break;
+            return 4;
+        }
 
-        case 0x84:
-            addA(HL.getHighByte());
-            break;
+        if (instrumented) {
 
-        case 0x85:
-            addA(HL.getLowByte());
-            break;
+            return executeInstrumented();
+        }
 
-        case 0x86:
-            addA(mmu.readByte(HL));
-            break;
+        // A timed OAM DMA blocks ROM, so its code is fetched through readByte
+        if (blockCache != null && PC < 0x8000 && mmu.getCyclesToOamDmaEnd() == Integer.MAX_VALUE) {
 
-        case 0x87:
-            addA(AF.getHighByte());
-            break;
+            return executeBlock();
+        }
 
-        case 0xC6:
-            addA(mmu.readByte(PC));
-            PC.inc();
-            break;
+        return instructions[fetchByte()].execute();
+    }
 
-        /* ADC A,n */
-        case 0x88:
-            adcA(BC.getHighByte());
-            break;
+    /**
+     * Executes the next instruction for the trace buffer, profiler and
+     * debugger. Returns 0 if a breakpoint paused before it.
+     */
+    private int executeInstrumented() {
 
-        case 0x89:
-            adcA(BC.getLowByte());
-            break;
+        int addr = PC;
+        int sp = SP;
+        int bank = addr >= 0x4000 && addr < 0x8000 ? mmu.getCart().getCurrRomBank() : 0;
+        int opcode = mmu.peekByte(addr);
 
-        case 0x8A:
-            adcA(DE.getHighByte());
-            break;
+        instructionAddr = addr;
+        if (debugger != null && debugger.stopsAt(addr, opcode)) {
 
-        case 0x8B:
-            adcA(DE.getLowByte());
-            break;
+            return 0;
+        }
 
-        case 0x8C:
-            adcA(HL.getHighByte());
-            break;
+        if (trace != null) {
 
-        case 0x8D:
-            adcA(HL.getLowByte());
-            break;
+            trace.record(bank, addr, opcode, getAF(), getBC(), getDE(), getHL(), sp);
+            if (!traceDumped && isUnrecognized(opcode)) {
 
-        case 0x8E:
-            adcA(mmu.readByte(HL));
-            break;
+                dumpTrace(opcode, bank, addr);
+            }
+        }
 
-        case 0x8F:
-            adcA(AF.getHighByte());
-            break;
+        int cycles;
+        if (blockCache != null && addr < 0x8000 && debugger == null
+                && mmu.getCyclesToOamDmaEnd() == Integer.MAX_VALUE) {
 
-        case 0xCE:
-            adcA(mmu.readByte(PC));
-            PC.inc();
-            break;
+            cycles = executeBlock();
+        } else {
 
-        /* ADD HL,n */
-        case 0x09:
-            addHL16bit(BC);
-            break;
+            cycles = instructions[fetchByte()].execute();
+        }
 
-        case 0x19:
-            addHL16bit(DE);
-            break;
+        if (trace != null) {
 
-        case 0x29:
-            addHL16bit(HL);
-            break;
+            trace.addCycles(cycles);
+        }
 
-        case 0x39:
-            addHL16bit(SP);
-            break;
+        if (profiler != null) {
 
-        /* ADD SP,n */
-        case 0xE8:
-            SP.setWord(addSP(mmu.readSignedByte(PC)));
-            PC.inc();
-            break;
+            profiler.record(bank, addr, cycles);
 
-        /* AND n */
-        case 0xA0:
-            andA(BC.getHighByte());
-            break;
+            if (SP == ((sp - 2) & 0xFFFF) && isCall(opcode)) {
 
-        case 0xA1:
-            andA(BC.getLowByte());
-            break;
+                profiler.enter(mmu.getCart().getCurrRomBank(), PC, SP);
+            } else {
 
-        case 0xA2:
-            andA(DE.getHighByte());
-            break;
+                profiler.leave(SP);
+            }
+        }
 
-        case 0xA3:
-            andA(DE.getLowByte());
-            break;
+        return cycles;
+    }
 
-        case 0xA4:
-            andA(HL.getHighByte());
-            break;
+    private void dumpTrace(int opcode, int bank, int addr) {
 
-        case 0xA5:
-            andA(HL.getLowByte());
-            break;
+        traceDumped = true;
 
-        case 0xA6:
-            andA(mmu.readByte(HL));
-            break;
+        File file = new File(System.getProperty("user.dir") + "/traces/" + mmu.getCart().getFileName()
+                + ".trace");
+        System.out.println(String.format("Unrecognized opcode %02X at %02X:%04X, writing trace: %s", opcode,
+                bank, addr, file.getAbsolutePath()));
 
-        case 0xA7:
-            andA(AF.getHighByte());
-            break;
+        try {
 
-        case 0xE6:
-            andA(mmu.readByte(PC));
-            PC.inc();
-            break;
+            file.getParentFile().mkdirs();
+            trace.dump(file);
+        } catch (IOException e) {
 
-        /* CALL */
-        case 0xC4:
-            if ((F & Z_FLAG) == 0) {
-                addr.setLowByte(mmu.readByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readByte(PC));
-                PC.inc();
-                SP.dec();
-                mmu.writeByte(SP, PC.getHighByte());
-                SP.dec();
-                mmu.writeByte(SP, PC.getLowByte());
-                PC.setWord(addr.getWord());
-            } else {
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 12;
-            }
-            break;
+            e.printStackTrace();
+        }
+    }
 
-        case 0xCC:
-            if ((F & Z_FLAG) != 0) {
-                addr.setLowByte(mmu.readByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readByte(PC));
-                PC.inc();
-                SP.dec();
-                mmu.writeByte(SP, PC.getHighByte());
-                SP.dec();
-                mmu.writeByte(SP, PC.getLowByte());
-                PC.setWord(addr.getWord());
-            } else {
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 12;
-            }
-            break;
+    private static boolean isUnrecognized(int opcode) {
 
-        case 0xCD:
-            addr.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            addr.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(addr.getWord());
-            break;
+        switch (opcode) {
+        case 0xD3:
+        case 0xDB:
+        case 0xDD:
+        case 0xE3:
+        case 0xE4:
+        case 0xEB:
+        case 0xEC:
+        case 0xED:
+        case 0xF4:
+        case 0xFC:
+        case 0xFD:
+            return true;
+        default:
+            return false;
+        }
+    }
 
-        case 0xD4:
-            if ((F & C_FLAG) == 0) {
-                addr.setLowByte(mmu.readByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readByte(PC));
-                PC.inc();
-                SP.dec();
-                mmu.writeByte(SP, PC.getHighByte());
-                SP.dec();
-                mmu.writeByte(SP, PC.getLowByte());
-                PC.setWord(addr.getWord());
-            } else {
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 12;
-            }
-            break;
+    /* CALL, CALL cc and RST */
+    private static boolean isCall(int opcode) {
 
-        case 0xDC:
-            if ((F & C_FLAG) != 0) {
-                addr.setLowByte(mmu.readByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readByte(PC));
-                PC.inc();
-                SP.dec();
-                mmu.writeByte(SP, PC.getHighByte());
-                SP.dec();
-                mmu.writeByte(SP, PC.getLowByte());
-                PC.setWord(addr.getWord());
-            } else {
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 12;
-            }
-            break;
+        return opcode == 0xCD || (opcode & 0xE7) == 0xC4 || (opcode & 0xC7) == 0xC7;
+    }
 
-        /* CCF */
-        case 0x3F:
-            F = (F & (Z_FLAG | C_FLAG)) ^ C_FLAG;
-            AF.setLowByte(F);
-            break;
+    /**
+     * Runs until cycleBudget cycles have passed, or until an I/O write, HALT
+     * or a polling loop start. Returns the cycles run.
+     */
+    public int run(int cycleBudget) {
 
-        /* CP */
-        case 0xB8:
-            cpA(BC.getHighByte());
-            break;
+        mmu.clearIoWritten();
 
-        case 0xB9:
-            cpA(BC.getLowByte());
-            break;
+        fusionCycleLimit = cycleBudget;
+        int cycles = execute();
+        pendingCycles += cycles;
 
-        case 0xBA:
-            cpA(DE.getHighByte());
-            break;
+        while (cycles < cycleBudget && !interrupts.isHalted() && PC != pollLoopStart
+                && !mmu.isIoWritten()) {
 
-        case 0xBB:
-            cpA(DE.getLowByte());
-            break;
+            checkInterrupts();
 
-        case 0xBC:
-            cpA(HL.getHighByte());
-            break;
+            fusionCycleLimit = cycleBudget - cycles;
+            int instructionCycles = execute();
+            cycles += instructionCycles;
+            pendingCycles += instructionCycles;
+        }
 
-        case 0xBD:
-            cpA(HL.getLowByte());
-            break;
+        fusionCycleLimit = Integer.MAX_VALUE;
 
-        case 0xBE:
-            cpA(mmu.readByte(HL));
-            break;
+        return cycles;
+    }
 
-        case 0xBF:
-            cpA(AF.getHighByte());
-            break;
+    /**
+     * Returns the cycles run since the last call, for bringing the timer, LCD
+     * and sound up to date.
+     */
+    public int takePendingCycles() {
 
-        case 0xFE:
-            cpA(mmu.readByte(PC));
-            PC.inc();
-            break;
+        int cycles = pendingCycles;
+        pendingCycles = 0;
+        cycleCount += cycles;
 
-        /* CPL */
-        case 0x2F:
-            AF.setHighByte(AF.getHighByte() ^ 0xFF);
-            F |= H_FLAG;
-            F |= N_FLAG;
-            AF.setLowByte(F);
-            break;
+        return cycles;
+    }
 
-        /* DDA */
-        case 0x27:
-            temp = AF.getHighByte();
+    /**
+     * Counts cycles that passed without the CPU running instructions, while
+     * it idled or was stopped by DMA.
+     */
+    public void addStoppedCycles(int cycles) {
 
-            if ((F & N_FLAG) == 0) {
-                if ((F & H_FLAG) == H_FLAG || (temp & 0xF) > 9)
-                    temp += 0x06;
+        cycleCount += cycles;
+    }
 
-                if ((F & C_FLAG) == C_FLAG || temp > 0x9F)
-                    temp += 0x60;
-            } else {
-                if ((F & H_FLAG) == H_FLAG)
-                    temp = ((temp - 6) & 0xFF);
+    /**
+     * Returns the cycles passed since init, up to the start of the current
+     * instruction.
+     */
+    public long getCycleCount() {
 
-                if ((F & C_FLAG) == C_FLAG)
-                    temp -= 0x60;
-            }
+        return cycleCount + pendingCycles;
+    }
 
-            F &= ~(H_FLAG | Z_FLAG);
+    /**
+     * Executes the next instruction from the current ROM block, looking up a
+     * new block when PC is not where the last one expected.
+     */
+    private int executeBlock() {
 
-            if ((temp & 0x100) == 0x100)
-                F |= C_FLAG;
+        BlockCache.Block block = currBlock;
+        int i = blockIndex;
 
-            temp &= 0xFF;
+        Cartridge cart = mmu.getCart();
+        int bank = PC >= 0x4000 ? cart.getCurrRomBank() : cart.getFixedRomBank();
 
-            if (temp == 0)
-                F |= Z_FLAG;
+        if (block == null || i >= block.length || block.addrs[i] != PC || block.bank != bank) {
 
-            AF.setLowByte(F);
+            block = blockCache.getBlock(PC);
+            currBlock = block;
+            if (block == null) {
 
-            AF.setHighByte(temp);
-            break;
+                return instructions[fetchByte()].execute();
+            }
+            i = 0;
+        }
 
-        /* DEC 8 bit */
-        case 0x05:
-            BC.setHighByte(dec8bit(BC.getHighByte()));
-            break;
+        PC = block.nextPCs[i];
 
-        case 0x0D:
-            BC.setLowByte(dec8bit(BC.getLowByte()));
-            break;
+        Instruction fused = block.fused[i];
+        if (fused != null) {
 
-        case 0x15:
-            DE.setHighByte(dec8bit(DE.getHighByte()));
-            break;
+            int cycles = fused.execute();
+            blockIndex = i + fusedLength;
 
-        case 0x1D:
-            DE.setLowByte(dec8bit(DE.getLowByte()));
-            break;
+            return cycles;
+        }
 
-        case 0x25:
-            HL.setHighByte(dec8bit(HL.getHighByte()));
-            break;
+        blockIndex = i + 1;
 
-        case 0x2D:
-            HL.setLowByte(dec8bit(HL.getLowByte()));
-            break;
+        return block.ops[i].execute();
+    }
 
-        case 0x35:
-            mmu.writeByte(HL, dec8bit(mmu.readByte(HL)));
-            break;
+    /**
+     * Returns how many times each fused sequence has run since the block
+     * cache was enabled, one line per {@link Fusion}.
+     */
+    public String getFusionReport() {
 
-        case 0x3D:
-            AF.setHighByte(dec8bit(AF.getHighByte()));
-            break;
+        StringBuilder report = new StringBuilder();
+        for (Fusion fusion : Fusion.values()) {
 
-        /* DEC 16 bit */
-        case 0x0B:
-            BC.dec();
-            break;
+            report.append(String.format("%-32s %d%n", fusion.getName(),
+                    fusionCounts[fusion.ordinal()]));
+        }
 
-        case 0x1B:
-            DE.dec();
-            break;
+        return report.toString();
+    }
 
-        case 0x2B:
-            HL.dec();
-            break;
+    /**
+     * Returns true if the CPU is halted and only a new interrupt can wake it,
+     * so the time until the next interrupt can be skipped in one step.
+     */
+    public boolean isIdle() {
 
-        case 0x3B:
-            SP.dec();
-            break;
+        return interrupts.isIdle();
+    }
 
-        /* HALT */
-        case 0x76:
-            halt = true;
-            break;
+    /**
+     * Returns the cycles of one pass of the LY/STAT polling loop at PC if
+     * another pass would change nothing, or 0 otherwise.
+     */
+    public int getPollLoopCycles() {
 
-        /* INC 8 bit */
-        case 0x04:
-            BC.setHighByte(inc8bit(BC.getHighByte()));
-            break;
+        if (PC != pollLoopStart) {
 
-        case 0x0C:
-            BC.setLowByte(inc8bit(BC.getLowByte()));
-            break;
+            return 0;
+        }
 
-        case 0x14:
-            DE.setHighByte(inc8bit(DE.getHighByte()));
-            break;
+        int cycles = probePollLoop();
+        if (cycles == 0) {
 
-        case 0x1C:
-            DE.setLowByte(inc8bit(DE.getLowByte()));
-            break;
+            // A loop still running marks itself again with its next JR
+            pollLoopStart = -1;
+        }
 
-        case 0x24:
-            HL.setHighByte(inc8bit(HL.getHighByte()));
-            break;
+        return cycles;
+    }
 
-        case 0x2C:
-            HL.setLowByte(inc8bit(HL.getLowByte()));
-            break;
+    private int probePollLoop() {
 
-        case 0x34:
-            mmu.writeByte(HL, inc8bit(mmu.readByte(HL)));
-            break;
+        if (PC > 0xFFF0 || interrupts.needsAttention()) {
 
-        case 0x3C:
-            AF.setHighByte(inc8bit(AF.getHighByte()));
-            break;
+            return 0;
+        }
 
-        /* INC nn */
-        case 0x03:
-            BC.inc();
-            break;
+        if (mmu.peekByte(PC) != 0xF0 || mmu.peekByte(PC + 5) != POLL_LOOP_OFFSET) {
 
-        case 0x13:
-            DE.inc();
-            break;
+            return 0;
+        }
 
-        case 0x23:
-            HL.inc();
-            break;
+        int port = mmu.peekByte(PC + 1);
+        if (port != 0x41 && port != 0x44) {
 
-        case 0x33:
-            SP.inc();
-            break;
+            return 0;
+        }
 
-        /* Jump (Relative) */
-        case 0x18:
-            temp = mmu.readSignedByte(PC);
-            PC.inc();
-            PC.setWord(PC.getWord() + temp);
-            break;
+        int val = mmu.peekByte(0xFF00 + port);
+        int opcode = mmu.peekByte(PC + 2);
+        int operand = mmu.peekByte(PC + 3);
 
-        case 0x20:
-            if ((F & Z_FLAG) == 0) {
+        int a;
+        int flags;
+        if (opcode == 0xFE) {
 
-                temp = mmu.readSignedByte(PC);
-                PC.inc();
-                PC.setWord(PC.getWord() + temp);
-            } else {
+            a = val;
+            flags = subFlags(val, operand, 0);
+        } else if (opcode == 0xE6) {
 
-                PC.inc();
-                cyclesRun -= 4;
-            }
-            break;
+            a = val & operand;
+            flags = logicFlags(a) | H_FLAG;
+        } else if (opcode == 0xCB && (operand & 0xC7) == 0x47) {
 
-        case 0x28:
-            if ((F & Z_FLAG) != 0) {
+            a = val;
+            flags = (getF() & C_FLAG) | H_FLAG;
+            if ((val & (1 << ((operand >> 3) & 0x7))) == 0)
+                flags |= Z_FLAG;
+        } else {
 
-                temp = mmu.readSignedByte(PC);
-                PC.inc();
-                PC.setWord(PC.getWord() + temp);
-            } else {
+            return 0;
+        }
 
-                PC.inc();
-                cyclesRun -= 4;
-            }
+        boolean taken;
+        switch (mmu.peekByte(PC + 4)) {
+        case 0x20:
+            taken = (flags & Z_FLAG) == 0;
+            break;
+        case 0x28:
+            taken = (flags & Z_FLAG) != 0;
             break;
-
         case 0x30:
-            if ((F & C_FLAG) == 0) {
+            taken = (flags & C_FLAG) == 0;
+            break;
+        case 0x38:
+            taken = (flags & C_FLAG) != 0;
+            break;
+        default:
+            taken = false;
+            break;
+        }
 
-                temp = mmu.readSignedByte(PC);
-                PC.inc();
-                PC.setWord(PC.getWord() + temp);
-            } else {
+        if (!taken || a != A || flags != getF()) {
 
-                PC.inc();
-                cyclesRun -= 4;
-            }
-            break;
+            return 0;
+        }
 
-        case 0x38:
-            if ((F & C_FLAG) != 0) {
+        // LDH, the compare and a taken JR
+        return 12 + 8 + 12;
+    }
 
-                temp = mmu.readSignedByte(PC);
-                PC.inc();
-                PC.setWord(PC.getWord() + temp);
-            } else {
+    public void checkInterrupts() {
 
-                PC.inc();
-                cyclesRun -= 4;
-            }
-            break;
+        if (interrupts.needsAttention()) {
 
-        /* JUMP */
-        case 0xC2:
-            if ((F & Z_FLAG) == 0) {
+            int vector = interrupts.acknowledge();
+            if (vector >= 0) {
 
-                addr.setLowByte(mmu.readSignedByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readSignedByte(PC));
-                PC.inc();
+                push(PC);
+                PC = vector;
 
-                PC.setWord(addr.getWord());
-            } else {
+                if (profiler != null) {
 
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 4;
+                    profiler.enter(0, PC, SP);
+                }
             }
-            break;
+        }
+    }
 
-        case 0xC3:
-            addr.setLowByte(mmu.readSignedByte(PC));
-            PC.inc();
-            addr.setHighByte(mmu.readSignedByte(PC));
-            PC.inc();
+    private int jumpRelative() {
 
-            PC.setWord(addr.getWord());
-            break;
+        int offset = fetchSignedByte();
+        PC = (PC + offset) & 0xFFFF;
 
-        case 0xCA:
-            if ((F & Z_FLAG) != 0) {
+        // Remember where a possible polling loop starts, see getPollLoopCycles
+        if (offset == -POLL_LOOP_LENGTH) {
 
-                addr.setLowByte(mmu.readSignedByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readSignedByte(PC));
-                PC.inc();
+            pollLoopStart = PC;
+        }
 
-                PC.setWord(addr.getWord());
-            } else {
+        return 12;
+    }
 
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 4;
-            }
-            break;
+    private int fetchByte() {
 
-        case 0xD2:
-            if ((F & C_FLAG) == 0) {
+        int addr = PC;
+        PC = (addr + 1) & 0xFFFF;
 
-                addr.setLowByte(mmu.readSignedByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readSignedByte(PC));
-                PC.inc();
+        if (addr < codeStart || addr >= codeEnd || codeVersion != mmu.getBankVersion()) {
 
-                PC.setWord(addr.getWord());
-            } else {
+            mapCodePage(addr);
+            if (codePage == null) {
 
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 4;
+                return mmu.readByte(addr);
             }
-            break;
-
-        case 0xDA:
-            if ((F & C_FLAG) != 0) {
+        }
 
-                addr.setLowByte(mmu.readSignedByte(PC));
-                PC.inc();
-                addr.setHighByte(mmu.readSignedByte(PC));
-                PC.inc();
+        return codePage[addr - codeStart] & 0xFF;
+    }
 
-                PC.setWord(addr.getWord());
-            } else {
+    /**
+     * Looks up the page holding addr for fetchByte. Only needed when PC
+     * leaves the current page or a ROM or WRAM bank switch may have happened.
+     */
+    private void mapCodePage(int addr) {
 
-                PC.inc();
-                PC.inc();
-                cyclesRun -= 4;
-            }
-            break;
+        codeVersion = mmu.getBankVersion();
+        codePage = mmu.getCodePage(addr);
+        codeStart = MemoryMap.getCodePageStart(addr);
+        codeEnd = codePage != null ? codeStart + codePage.length : codeStart;
+    }
 
-        case 0xE9:
-            PC.setWord(HL.getWord());
-            break;
+    private int fetchSignedByte() {
 
-        /*
-         * Load Commands 8bit
-         */
+        int val = fetchByte();
 
-        /* LD nn,n - Put value nn into n */
-        case 0x06:
-            BC.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
+        if (val > 127)
+            val -= 256;
 
-        case 0x0E:
-            BC.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        case 0x16:
-            DE.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        case 0x1E:
-            DE.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        case 0x26:
-            HL.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        case 0x2E:
-            HL.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        /* LD r1,r2 - Put value r2 into r1 */
-        case 0x40:
-            BC.setHighByte(BC.getHighByte());
-            break;
-
-        case 0x41:
-            BC.setHighByte(BC.getLowByte());
-            break;
-
-        case 0x42:
-            BC.setHighByte(DE.getHighByte());
-            break;
-
-        case 0x43:
-            BC.setHighByte(DE.getLowByte());
-            break;
-
-        case 0x44:
-            BC.setHighByte(HL.getHighByte());
-            break;
-
-        case 0x45:
-            BC.setHighByte(HL.getLowByte());
-            break;
-
-        case 0x46:
-            BC.setHighByte(mmu.readByte(HL));
-            break;
-
-        case 0x47:
-            BC.setHighByte(AF.getHighByte());
-            break;
-
-        case 0x48:
-            BC.setLowByte(BC.getHighByte());
-            break;
-
-        case 0x4A:
-            BC.setLowByte(DE.getHighByte());
-            break;
-
-        case 0x4B:
-            BC.setLowByte(DE.getLowByte());
-            break;
-
-        case 0x4C:
-            BC.setLowByte(HL.getHighByte());
-            break;
-
-        case 0x4D:
-            BC.setLowByte(HL.getLowByte());
-            break;
-
-        case 0x4E:
-            BC.setLowByte(mmu.readByte(HL));
-            break;
-
-        case 0x4F:
-            BC.setLowByte(AF.getHighByte());
-            break;
-
-        case 0x50:
-            DE.setHighByte(BC.getHighByte());
-            break;
-
-        case 0x51:
-            DE.setHighByte(BC.getLowByte());
-            break;
-
-        case 0x52:
-            DE.setHighByte(DE.getHighByte());
-            break;
-
-        case 0x53:
-            DE.setHighByte(DE.getLowByte());
-            break;
-
-        case 0x54:
-            DE.setHighByte(HL.getHighByte());
-            break;
-
-        case 0x55:
-            DE.setHighByte(HL.getLowByte());
-            break;
-
-        case 0x56:
-            DE.setHighByte(mmu.readByte(HL));
-            break;
-
-        case 0x57:
-            DE.setHighByte(AF.getHighByte());
-            break;
-
-        case 0x58:
-            DE.setLowByte(BC.getHighByte());
-            break;
-
-        case 0x59:
-            DE.setLowByte(BC.getLowByte());
-            break;
-
-        case 0x5A:
-            DE.setLowByte(DE.getHighByte());
-            break;
-
-        case 0x5B:
-            DE.setLowByte(DE.getLowByte());
-            break;
-
-        case 0x5C:
-            DE.setLowByte(HL.getHighByte());
-            break;
-
-        case 0x5D:
-            DE.setLowByte(HL.getLowByte());
-            break;
-
-        case 0x5E:
-            DE.setLowByte(mmu.readByte(HL));
-            break;
-
-        case 0x5F:
-            DE.setLowByte(AF.getHighByte());
-            break;
-
-        case 0x60:
-            HL.setHighByte(BC.getHighByte());
-            break;
-
-        case 0x61:
-            HL.setHighByte(BC.getLowByte());
-            break;
-
-        case 0x62:
-            HL.setHighByte(DE.getHighByte());
-            break;
-
-        case 0x63:
-            HL.setHighByte(DE.getLowByte());
-            break;
-
-        case 0x64:
-            HL.setHighByte(HL.getHighByte());
-            break;
-
-        case 0x65:
-            HL.setHighByte(HL.getLowByte());
-            break;
-
-        case 0x66:
-            HL.setHighByte(mmu.readByte(HL));
-            break;
-
-        case 0x67:
-            HL.setHighByte(AF.getHighByte());
-            break;
-
-        case 0x68:
-            HL.setLowByte(BC.getHighByte());
-            break;
-
-        case 0x69:
-            HL.setLowByte(BC.getLowByte());
-            break;
-
-        case 0x6A:
-            HL.setLowByte(DE.getHighByte());
-            break;
-
-        case 0x6B:
-            HL.setLowByte(DE.getLowByte());
-            break;
-
-        case 0x6C:
-            HL.setLowByte(HL.getHighByte());
-            break;
-
-        case 0x6D:
-            HL.setLowByte(HL.getLowByte());
-            break;
-
-        case 0x6E:
-            HL.setLowByte(mmu.readByte(HL));
-            break;
-
-        case 0x6F:
-            HL.setLowByte(AF.getHighByte());
-            break;
-
-        case 0x70:
-            mmu.writeByte(HL, BC.getHighByte());
-            break;
-
-        case 0x71:
-            mmu.writeByte(HL, BC.getLowByte());
-            break;
-
-        case 0x72:
-            mmu.writeByte(HL, DE.getHighByte());
-            break;
-
-        case 0x73:
-            mmu.writeByte(HL, DE.getLowByte());
-            break;
-
-        case 0x74:
-            mmu.writeByte(HL, HL.getHighByte());
-            break;
-
-        case 0x75:
-            mmu.writeByte(HL, HL.getLowByte());
-            break;
-
-        case 0x36:
-            mmu.writeByte(HL, mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        /* LD A,n - Put value n into A */
-        case 0x78:
-            AF.setHighByte(BC.getHighByte());
-            break;
-
-        case 0x79:
-            AF.setHighByte(BC.getLowByte());
-            break;
-
-        case 0x7A:
-            AF.setHighByte(DE.getHighByte());
-            break;
-
-        case 0x7B:
-            AF.setHighByte(DE.getLowByte());
-            break;
-
-        case 0x7C:
-            AF.setHighByte(HL.getHighByte());
-            break;
-
-        case 0x7D:
-            AF.setHighByte(HL.getLowByte());
-            break;
-
-        case 0x7F:
-            AF.setHighByte(AF.getHighByte());
-            break;
-
-        case 0x0A:
-            AF.setHighByte(mmu.readByte(BC));
-            break;
-
-        case 0x1A:
-            AF.setHighByte(mmu.readByte(DE));
-            break;
-
-        case 0x7E:
-            AF.setHighByte(mmu.readByte(HL));
-            break;
-
-        case 0xFA:
-            addr.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            addr.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            AF.setHighByte(mmu.readByte(addr));
-            break;
+        return val;
+    }
 
-        case 0x3E:
-            AF.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
+    private int fetchWord() {
 
-        /* LD n,A */
-        case 0x02:
-            mmu.writeByte(BC, AF.getHighByte());
-            break;
+        int low = fetchByte();
 
-        case 0x12:
-            mmu.writeByte(DE, AF.getHighByte());
-            break;
+        return (fetchByte() << 8) | low;
+    }
 
-        case 0x77:
-            mmu.writeByte(HL, AF.getHighByte());
-            break;
+    private void push(int val) {
 
-        case 0xEA:
-            addr.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            addr.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            mmu.writeByte(addr, AF.getHighByte());
-            break;
+        SP = (SP - 1) & 0xFFFF;
+        mmu.writeByte(SP, (val >> 8) & 0xFF);
+        SP = (SP - 1) & 0xFFFF;
+        mmu.writeByte(SP, val & 0xFF);
+    }
 
-        /* LD A,(C) */
-        case 0xF2:
-            addr.setWord(0xFF00 + BC.getLowByte());
-            AF.setHighByte(mmu.readByte(addr));
-            PC.inc();
-            break;
+    private int pop() {
 
-        /* LD (C),A */
-        case 0xE2:
-            addr.setWord(0xFF00 + BC.getLowByte());
-            mmu.writeByte(addr, AF.getHighByte());
-            break;
+        int low = mmu.readByte(SP);
+        SP = (SP + 1) & 0xFFFF;
+        int high = mmu.readByte(SP);
+        SP = (SP + 1) & 0xFFFF;
 
-        /* LDD A,(HL) */
-        case 0x3A:
-            AF.setHighByte(mmu.readByte(HL));
-            HL.dec();
-            break;
+        return (high << 8) | low;
+    }
 
-        /* LDD (HL),A */
-        case 0x32:
-            mmu.writeByte(HL, AF.getHighByte());
-            HL.dec();
-            break;
+    private int getAF() {
 
-        /* LDI A,(HL) */
-        case 0x2A:
-            AF.setHighByte(mmu.readByte(HL));
-            HL.inc();
-            break;
+        return (A << 8) | getF();
+    }
 
-        /* LDI (HL),A */
-        case 0x22:
-            mmu.writeByte(HL, AF.getHighByte());
-            HL.inc();
-            break;
+    private void setAF(int val) {
 
-        /* LDH (n),A */
-        case 0xE0:
-            addr.setWord(0xFF00 + mmu.readByte(PC));
-            mmu.writeByte(addr, AF.getHighByte());
-            PC.inc();
-            break;
+        A = (val >> 8) & 0xFF;
+        setF(val & 0xF0);
+    }
 
-        /* LDH A,(n) */
-        case 0xF0:
-            addr.setWord(0xFF00 + mmu.readByte(PC));
-            AF.setHighByte(mmu.readByte(addr));
-            PC.inc();
-            break;
-        /*
-         * Load Commands 16bit
-         */
+    private int getBC() {
 
-        /* LD n,nn */
-        case 0x01:
-            BC.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            BC.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
+        return (B << 8) | C;
+    }
 
-        case 0x11:
-            DE.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            DE.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
+    private void setBC(int val) {
 
-        case 0x21:
-            HL.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            HL.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
+        B = (val >> 8) & 0xFF;
+        C = val & 0xFF;
+    }
 
-        case 0x31:
-            SP.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            SP.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            break;
+    private int getDE() {
 
-        /* LD SP,HL */
-        case 0xF9:
-            SP.setWord(HL.getWord());
-            break;
+        return (D << 8) | E;
+    }
 
-        /* LDHL SP,n */
-        case 0xF8:
-            HL.setWord(addSP(mmu.readSignedByte(PC)));
-            PC.inc();
-            break;
+    private void setDE(int val) {
 
-        /* LD (nn),SP */
-        case 0x08:
-            addr = new Word();
-            addr.setLowByte(mmu.readByte(PC));
-            PC.inc();
-            addr.setHighByte(mmu.readByte(PC));
-            PC.inc();
-            mmu.writeByte(addr, SP.getLowByte());
-            addr.inc();
-            mmu.writeByte(addr, SP.getHighByte());
-            break;
+        D = (val >> 8) & 0xFF;
+        E = val & 0xFF;
+    }
 
-        /* OR */
-        case 0xB0:
-            orA(BC.getHighByte());
-            break;
+    private int getHL() {
 
-        case 0xB1:
-            orA(BC.getLowByte());
-            break;
+        return (H << 8) | L;
+    }
 
-        case 0xB2:
-            orA(DE.getHighByte());
-            break;
+    private void setHL(int val) {
 
-        case 0xB3:
-            orA(DE.getLowByte());
-            break;
+        H = (val >> 8) & 0xFF;
+        L = val & 0xFF;
+    }
 
-        case 0xB4:
-            orA(HL.getHighByte());
-            break;
+    private void initInstructions() {
 
-        case 0xB5:
-            orA(HL.getLowByte());
-            break;
+        /* NOP */
+        instructions[0x00] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x40] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x49] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x52] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x5B] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x64] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x6D] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0x7F] = new Instruction() { @Override int execute() { return 4; } };
+        instructions[0xD3] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xDB] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xDD] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xE3] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xE4] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xEB] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xEC] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xED] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xF4] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xFC] = new Instruction() { @Override int execute() { return 0; } };
+        instructions[0xFD] = new Instruction() { @Override int execute() { return 0; } };
 
-        case 0xB6:
-            orA(mmu.readByte(HL));
-            break;
+        /* ADD A,n */
+        instructions[0x80] = new Instruction() { @Override int execute() {
+            addA(B);
+            return 4;
+        }};
+
+        instructions[0x81] = new Instruction() { @Override int execute() {
+            addA(C);
+            return 4;
+        }};
+
+        instructions[0x82] = new Instruction() { @Override int execute() {
+            addA(D);
+            return 4;
+        }};
+
+        instructions[0x83] = new Instruction() { @Override int execute() {
+            addA(E);
+            return 4;
+        }};
+
+        instructions[0x84] = new Instruction() { @Override int execute() {
+            addA(H);
+            return 4;
+        }};
+
+        instructions[0x85] = new Instruction() { @Override int execute() {
+            addA(L);
+            return 4;
+        }};
+
+        instructions[0x86] = new Instruction() { @Override int execute() {
+            addA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0x87] = new Instruction() { @Override int execute() {
+            addA(A);
+            return 4;
+        }};
+
+        instructions[0xC6] = new Instruction() { @Override int execute() {
+            addA(fetchByte());
+            return 8;
+        }};
 
-        case 0xB7:
-            orA(AF.getHighByte());
-            break;
+        /* ADC A,n */
+        instructions[0x88] = new Instruction() { @Override int execute() {
+            adcA(B);
+            return 4;
+        }};
+
+        instructions[0x89] = new Instruction() { @Override int execute() {
+            adcA(C);
+            return 4;
+        }};
+
+        instructions[0x8A] = new Instruction() { @Override int execute() {
+            adcA(D);
+            return 4;
+        }};
+
+        instructions[0x8B] = new Instruction() { @Override int execute() {
+            adcA(E);
+            return 4;
+        }};
+
+        instructions[0x8C] = new Instruction() { @Override int execute() {
+            adcA(H);
+            return 4;
+        }};
+
+        instructions[0x8D] = new Instruction() { @Override int execute() {
+            adcA(L);
+            return 4;
+        }};
+
+        instructions[0x8E] = new Instruction() { @Override int execute() {
+            adcA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0x8F] = new Instruction() { @Override int execute() {
+            adcA(A);
+            return 4;
+        }};
+
+        instructions[0xCE] = new Instruction() { @Override int execute() {
+            adcA(fetchByte());
+            return 8;
+        }};
 
-        case 0xF6:
-            orA(mmu.readByte(PC));
-            PC.inc();
-            break;
+        /* ADD HL,n */
+        instructions[0x09] = new Instruction() { @Override int execute() {
+            addHL16bit(getBC());
+            return 8;
+        }};
+
+        instructions[0x19] = new Instruction() { @Override int execute() {
+            addHL16bit(getDE());
+            return 8;
+        }};
+
+        instructions[0x29] = new Instruction() { @Override int execute() {
+            addHL16bit(getHL());
+            return 8;
+        }};
+
+        instructions[0x39] = new Instruction() { @Override int execute() {
+            addHL16bit(SP);
+            return 8;
+        }};
 
-        /* POP nn */
-        case 0xF1:
-            AF.setLowByte(mmu.readByte(SP));
-            SP.inc();
-            AF.setHighByte(mmu.readByte(SP));
-            SP.inc();
-            AF.setLowByte(AF.getLowByte() & 0xF0);
-            break;
+        /* ADD SP,n */
+        instructions[0xE8] = new Instruction() { @Override int execute() {
+            SP = addSP(fetchSignedByte());
+            return 16;
+        }};
 
-        case 0xC1:
-            BC.setLowByte(mmu.readByte(SP));
-            SP.inc();
-            BC.setHighByte(mmu.readByte(SP));
-            SP.inc();
-            break;
+        /* AND n */
+        instructions[0xA0] = new Instruction() { @Override int execute() {
+            andA(B);
+            return 4;
+        }};
+
+        instructions[0xA1] = new Instruction() { @Override int execute() {
+            andA(C);
+            return 4;
+        }};
+
+        instructions[0xA2] = new Instruction() { @Override int execute() {
+            andA(D);
+            return 4;
+        }};
+
+        instructions[0xA3] = new Instruction() { @Override int execute() {
+            andA(E);
+            return 4;
+        }};
+
+        instructions[0xA4] = new Instruction() { @Override int execute() {
+            andA(H);
+            return 4;
+        }};
+
+        instructions[0xA5] = new Instruction() { @Override int execute() {
+            andA(L);
+            return 4;
+        }};
+
+        instructions[0xA6] = new Instruction() { @Override int execute() {
+            andA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0xA7] = new Instruction() { @Override int execute() {
+            andA(A);
+            return 4;
+        }};
+
+        instructions[0xE6] = new Instruction() { @Override int execute() {
+            andA(fetchByte());
+            return 8;
+        }};
 
-        case 0xD1:
-            DE.setLowByte(mmu.readByte(SP));
-            SP.inc();
-            DE.setHighByte(mmu.readByte(SP));
-            SP.inc();
-            break;
+        /* CALL */
+        instructions[0xC4] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) == 0) {
+                int addr = fetchWord();
+                push(PC);
+                PC = addr;
+                return 24;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0xCC] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) != 0) {
+                int addr = fetchWord();
+                push(PC);
+                PC = addr;
+                return 24;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0xCD] = new Instruction() { @Override int execute() {
+            int addr = fetchWord();
+            push(PC);
+            PC = addr;
+            return 24;
+        }};
+
+        instructions[0xD4] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) == 0) {
+                int addr = fetchWord();
+                push(PC);
+                PC = addr;
+                return 24;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0xDC] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) != 0) {
+                int addr = fetchWord();
+                push(PC);
+                PC = addr;
+                return 24;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
 
-        case 0xE1:
-            HL.setLowByte(mmu.readByte(SP));
-            SP.inc();
-            HL.setHighByte(mmu.readByte(SP));
-            SP.inc();
-            break;
+        /* CCF */
+        instructions[0x3F] = new Instruction() { @Override int execute() {
+            setF((getF() & (Z_FLAG | C_FLAG)) ^ C_FLAG);
+            return 4;
+        }};
 
-        /* PUSH nn */
-        case 0xF5:
-            SP.dec();
-            mmu.writeByte(SP, AF.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, AF.getLowByte());
-            break;
+        /* CP */
+        instructions[0xB8] = new Instruction() { @Override int execute() {
+            cpA(B);
+            return 4;
+        }};
+
+        instructions[0xB9] = new Instruction() { @Override int execute() {
+            cpA(C);
+            return 4;
+        }};
+
+        instructions[0xBA] = new Instruction() { @Override int execute() {
+            cpA(D);
+            return 4;
+        }};
+
+        instructions[0xBB] = new Instruction() { @Override int execute() {
+            cpA(E);
+            return 4;
+        }};
+
+        instructions[0xBC] = new Instruction() { @Override int execute() {
+            cpA(H);
+            return 4;
+        }};
+
+        instructions[0xBD] = new Instruction() { @Override int execute() {
+            cpA(L);
+            return 4;
+        }};
+
+        instructions[0xBE] = new Instruction() { @Override int execute() {
+            cpA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0xBF] = new Instruction() { @Override int execute() {
+            cpA(A);
+            return 4;
+        }};
+
+        instructions[0xFE] = new Instruction() { @Override int execute() {
+            cpA(fetchByte());
+            return 8;
+        }};
 
-        case 0xC5:
-            SP.dec();
-            mmu.writeByte(SP, BC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, BC.getLowByte());
-            break;
+        /* CPL */
+        instructions[0x2F] = new Instruction() { @Override int execute() {
+            A ^= 0xFF;
+            setF(getF() | H_FLAG | N_FLAG);
+            return 4;
+        }};
 
-        case 0xD5:
-            SP.dec();
-            mmu.writeByte(SP, DE.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, DE.getLowByte());
-            break;
+        /* DDA */
+        instructions[0x27] = new Instruction() { @Override int execute() {
+            int flags = getF();
+            int result = daa(A, flags);
+            setF(result >> 8);
+            A = result & 0xFF;
+            return 4;
+        }};
 
-        case 0xE5:
-            SP.dec();
-            mmu.writeByte(SP, HL.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, HL.getLowByte());
-            break;
+        /* DEC 8 bit */
+        instructions[0x05] = new Instruction() { @Override int execute() {
+            B = dec8bit(B);
+            return 4;
+        }};
+
+        instructions[0x0D] = new Instruction() { @Override int execute() {
+            C = dec8bit(C);
+            return 4;
+        }};
+
+        instructions[0x15] = new Instruction() { @Override int execute() {
+            D = dec8bit(D);
+            return 4;
+        }};
+
+        instructions[0x1D] = new Instruction() { @Override int execute() {
+            E = dec8bit(E);
+            return 4;
+        }};
+
+        instructions[0x25] = new Instruction() { @Override int execute() {
+            H = dec8bit(H);
+            return 4;
+        }};
+
+        instructions[0x2D] = new Instruction() { @Override int execute() {
+            L = dec8bit(L);
+            return 4;
+        }};
+
+        instructions[0x35] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), dec8bit(mmu.readByte(getHL())));
+            return 12;
+        }};
+
+        instructions[0x3D] = new Instruction() { @Override int execute() {
+            A = dec8bit(A);
+            return 4;
+        }};
 
-        /* RET */
-        case 0xC9:
-            PC.setLowByte(mmu.readByte(SP));
-            SP.inc();
-            PC.setHighByte(mmu.readByte(SP));
-            SP.inc();
-            break;
+        /* DEC 16 bit */
+        instructions[0x0B] = new Instruction() { @Override int execute() {
+            setBC(getBC() - 1);
+            return 8;
+        }};
+
+        instructions[0x1B] = new Instruction() { @Override int execute() {
+            setDE(getDE() - 1);
+            return 8;
+        }};
+
+        instructions[0x2B] = new Instruction() { @Override int execute() {
+            setHL(getHL() - 1);
+            return 8;
+        }};
+
+        instructions[0x3B] = new Instruction() { @Override int execute() {
+            SP = (SP - 1) & 0xFFFF;
+            return 8;
+        }};
 
-        /* RET cc */
-        case 0xC0: // RET NZ
-            if ((F & Z_FLAG) == 0) {
+        /* HALT */
+        instructions[0x76] = new Instruction() { @Override int execute() {
+            interrupts.halt();
+            return 4;
+        }};
 
-                PC.setLowByte(mmu.readByte(SP));
-                SP.inc();
-                PC.setHighByte(mmu.readByte(SP));
-                SP.inc();
+        /* INC 8 bit */
+        instructions[0x04] = new Instruction() { @Override int execute() {
+            B = inc8bit(B);
+            return 4;
+        }};
+
+        instructions[0x0C] = new Instruction() { @Override int execute() {
+            C = inc8bit(C);
+            return 4;
+        }};
+
+        instructions[0x14] = new Instruction() { @Override int execute() {
+            D = inc8bit(D);
+            return 4;
+        }};
+
+        instructions[0x1C] = new Instruction() { @Override int execute() {
+            E = inc8bit(E);
+            return 4;
+        }};
+
+        instructions[0x24] = new Instruction() { @Override int execute() {
+            H = inc8bit(H);
+            return 4;
+        }};
+
+        instructions[0x2C] = new Instruction() { @Override int execute() {
+            L = inc8bit(L);
+            return 4;
+        }};
+
+        instructions[0x34] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), inc8bit(mmu.readByte(getHL())));
+            return 12;
+        }};
+
+        instructions[0x3C] = new Instruction() { @Override int execute() {
+            A = inc8bit(A);
+            return 4;
+        }};
 
-            } else {
+        /* INC nn */
+        instructions[0x03] = new Instruction() { @Override int execute() {
+            setBC(getBC() + 1);
+            return 8;
+        }};
+
+        instructions[0x13] = new Instruction() { @Override int execute() {
+            setDE(getDE() + 1);
+            return 8;
+        }};
+
+        instructions[0x23] = new Instruction() { @Override int execute() {
+            setHL(getHL() + 1);
+            return 8;
+        }};
+
+        instructions[0x33] = new Instruction() { @Override int execute() {
+            SP = (SP + 1) & 0xFFFF;
+            return 8;
+        }};
 
-                cyclesRun -= 12;
+        /* Jump (Relative) */
+        instructions[0x18] = new Instruction() { @Override int execute() {
+            int offset = fetchSignedByte();
+            PC = (PC + offset) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0x20] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) == 0) {
+                return jumpRelative();
             }
-            break;
-
-        case 0xC8:// RET Z
-            if ((F & Z_FLAG) != 0) {
-
-                PC.setLowByte(mmu.readByte(SP));
-                SP.inc();
-                PC.setHighByte(mmu.readByte(SP));
-                SP.inc();
-
-            } else {
+            PC = (PC + 1) & 0xFFFF;
+            return 8;
+        }};
 
-                cyclesRun -= 12;
+        instructions[0x28] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) != 0) {
+                return jumpRelative();
             }
-            break;
-
-        case 0xD0: // RET NC
-            if ((F & C_FLAG) == 0) {
-
-                PC.setLowByte(mmu.readByte(SP));
-                SP.inc();
-                PC.setHighByte(mmu.readByte(SP));
-                SP.inc();
+            PC = (PC + 1) & 0xFFFF;
+            return 8;
+        }};
 
-            } else {
-
-                cyclesRun -= 12;
+        instructions[0x30] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) == 0) {
+                return jumpRelative();
             }
-            break;
-
-        case 0xD8:// RET C
-            if ((F & C_FLAG) != 0) {
+            PC = (PC + 1) & 0xFFFF;
+            return 8;
+        }};
 
-                PC.setLowByte(mmu.readByte(SP));
-                SP.inc();
-                PC.setHighByte(mmu.readByte(SP));
-                SP.inc();
-
-            } else {
-
-                cyclesRun -= 12;
+        instructions[0x38] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) != 0) {
+                return jumpRelative();
             }
-            break;
+            PC = (PC + 1) & 0xFFFF;
+            return 8;
+        }};
 
-        /* RETI */
-        case 0xD9:
-            setIME = true;
-            PC.setLowByte(mmu.readByte(SP));
-            SP.inc();
-            PC.setHighByte(mmu.readByte(SP));
-            SP.inc();
-            break;
-
-        /* RLA */
-        case 0x17:
-            carry = (F & C_FLAG) >> 4;
-            AF.setLowByte((AF.getHighByte() & 0x80) >> 3);
-            AF.setHighByte((AF.getHighByte() << 1) | carry);
-            break;
-
-        /* RLCA */
-        case 0x07:
-            carry = (AF.getHighByte() & 0x80) >> 7;
-            AF.setLowByte(carry << 4);
-            AF.setHighByte((AF.getHighByte() << 1) | carry);
-            break;
-
-        /* RRA */
-        case 0x1F:
-            carry = (F & C_FLAG) >> 4;
-            AF.setLowByte((AF.getHighByte() & 0x01) << 4);
-            AF.setHighByte((carry << 7) | (AF.getHighByte() >> 1));
-            break;
-
-        /* RRCA */
-        case 0x0F:
-            carry = (AF.getHighByte() & 0x01);
-            AF.setLowByte(carry << 4);
-            AF.setHighByte((carry << 7) | (AF.getHighByte() >> 1));
-            break;
-
-        /* RST */
-        case 0xC7:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x00);
-            break;
-
-        case 0xCF:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x08);
-            break;
-
-        case 0xD7:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x10);
-            break;
-
-        case 0xDF:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x18);
-            break;
-
-        case 0xE7:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x20);
-            break;
-
-        case 0xEF:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x28);
-            break;
-
-        case 0xF7:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x30);
-            break;
-
-        case 0xFF:
-            SP.dec();
-            mmu.writeByte(SP, PC.getHighByte());
-            SP.dec();
-            mmu.writeByte(SP, PC.getLowByte());
-            PC.setWord(0x38);
-            break;
-
-        /* SCF */
-        case 0x37:
-            F &= Z_FLAG;
-            F |= C_FLAG;
-            AF.setLowByte(F);
-            break;
-
-        /* STOP */
-        case 0x10:
-            PC.inc();
-            break;
-
-        /* DI */
-        case 0xF3:
-            disableIME = true;
-            break;
-
-        /* IE */
-        case 0xFB:
-            setIME = true;
-            break;
-
-        /* SUB n */
-        case 0x90:
-            subA(BC.getHighByte());
-            break;
-
-        case 0x91:
-            subA(BC.getLowByte());
-            break;
-
-        case 0x92:
-            subA(DE.getHighByte());
-            break;
-
-        case 0x93:
-            subA(DE.getLowByte());
-            break;
-
-        case 0x94:
-            subA(HL.getHighByte());
-            break;
-
-        case 0x95:
-            subA(HL.getLowByte());
-            break;
-
-        case 0x96:
-            subA(mmu.readByte(HL));
-            break;
-
-        case 0x97:
-            subA(AF.getHighByte());
-            break;
-
-        case 0xD6:
-            subA(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        /* SBC A,n */
-        case 0x98:
-            sbcA(BC.getHighByte());
-            break;
-
-        case 0x99:
-            sbcA(BC.getLowByte());
-            break;
-
-        case 0x9A:
-            sbcA(DE.getHighByte());
-            break;
-
-        case 0x9B:
-            sbcA(DE.getLowByte());
-            break;
-
-        case 0x9C:
-            sbcA(HL.getHighByte());
-            break;
-
-        case 0x9D:
-            sbcA(HL.getLowByte());
-            break;
-
-        case 0x9E:
-            sbcA(mmu.readByte(HL));
-            break;
-
-        case 0x9F:
-            sbcA(AF.getHighByte());
-            break;
-
-        case 0xDE:
-            sbcA(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        /* XOR */
-        case 0xA8:
-            xorA(BC.getHighByte());
-            break;
-
-        case 0xA9:
-            xorA(BC.getLowByte());
-            break;
-
-        case 0xAA:
-            xorA(DE.getHighByte());
-            break;
-
-        case 0xAB:
-            xorA(DE.getLowByte());
-            break;
-
-        case 0xAC:
-            xorA(HL.getHighByte());
-            break;
-
-        case 0xAD:
-            xorA(HL.getLowByte());
-            break;
-
-        case 0xAE:
-            xorA(mmu.readByte(HL));
-            break;
-
-        case 0xAF:
-            xorA(AF.getHighByte());
-            break;
-
-        case 0xEE:
-            xorA(mmu.readByte(PC));
-            PC.inc();
-            break;
-
-        case 0xCB:
-            int op = mmu.readByte(PC);
-            PC.inc();
-            cyclesRun += cyclesCB[op];
-            executeCBOpCode(op);
-            break;
-
-        default:
-            System.out.println("Unrecognized OpCode: "
-                    + Integer.toHexString(opCode));
-            break;
-        }
-    }
-
-    private void executeCBOpCode(int op) {
-
-        switch (op) {
-
-        case 0x00:
-            BC.setHighByte(rlc(BC.getHighByte()));
-            break;
-
-        case 0x01:
-            BC.setLowByte(rlc(BC.getLowByte()));
-            break;
-
-        case 0x02:
-            DE.setHighByte(rlc(DE.getHighByte()));
-            break;
-
-        case 0x03:
-            DE.setLowByte(rlc(DE.getLowByte()));
-            break;
-
-        case 0x04:
-            HL.setHighByte(rlc(HL.getHighByte()));
-            break;
-
-        case 0x05:
-            HL.setLowByte(rlc(HL.getLowByte()));
-            break;
-
-        case 0x06:
-            mmu.writeByte(HL, rlc(mmu.readByte(HL)));
-            break;
-
-        case 0x07:
-            AF.setHighByte(rlc(AF.getHighByte()));
-            break;
-
-        case 0x08:
-            BC.setHighByte(rrc(BC.getHighByte()));
-            break;
-
-        case 0x09:
-            BC.setLowByte(rrc(BC.getLowByte()));
-            break;
-
-        case 0x0A:
-            DE.setHighByte(rrc(DE.getHighByte()));
-            break;
-
-        case 0x0B:
-            DE.setLowByte(rrc(DE.getLowByte()));
-            break;
-
-        case 0x0C:
-            HL.setHighByte(rrc(HL.getHighByte()));
-            break;
-
-        case 0x0D:
-            HL.setLowByte(rrc(HL.getLowByte()));
-            break;
-
-        case 0x0E:
-            mmu.writeByte(HL, rrc(mmu.readByte(HL)));
-            break;
-
-        case 0x0F:
-            AF.setHighByte(rrc(AF.getHighByte()));
-            break;
-
-        case 0x10:
-            BC.setHighByte(rl(BC.getHighByte()));
-            break;
-
-        case 0x11:
-            BC.setLowByte(rl(BC.getLowByte()));
-            break;
-
-        case 0x12:
-            DE.setHighByte(rl(DE.getHighByte()));
-            break;
-
-        case 0x13:
-            DE.setLowByte(rl(DE.getLowByte()));
-            break;
-
-        case 0x14:
-            HL.setHighByte(rl(HL.getHighByte()));
-            break;
-
-        case 0x15:
-            HL.setLowByte(rl(HL.getLowByte()));
-            break;
-
-        case 0x16:
-            mmu.writeByte(HL, rl(mmu.readByte(HL)));
-            break;
-
-        case 0x17:
-            AF.setHighByte(rl(AF.getHighByte()));
-            break;
-
-        case 0x18:
-            BC.setHighByte(rr(BC.getHighByte()));
-            break;
-
-        case 0x19:
-            BC.setLowByte(rr(BC.getLowByte()));
-            break;
-
-        case 0x1A:
-            DE.setHighByte(rr(DE.getHighByte()));
-            break;
-
-        case 0x1B:
-            DE.setLowByte(rr(DE.getLowByte()));
-            break;
-
-        case 0x1C:
-            HL.setHighByte(rr(HL.getHighByte()));
-            break;
-
-        case 0x1D:
-            HL.setLowByte(rr(HL.getLowByte()));
-            break;
-
-        case 0x1E:
-            mmu.writeByte(HL, rr(mmu.readByte(HL)));
-            break;
-
-        case 0x1F:
-            AF.setHighByte(rr(AF.getHighByte()));
-            break;
-
-        case 0x20:
-            BC.setHighByte(sla(BC.getHighByte()));
-            break;
-
-        case 0x21:
-            BC.setLowByte(sla(BC.getLowByte()));
-            break;
-
-        case 0x22:
-            DE.setHighByte(sla(DE.getHighByte()));
-            break;
-
-        case 0x23:
-            DE.setLowByte(sla(DE.getLowByte()));
-            break;
-
-        case 0x24:
-            HL.setHighByte(sla(HL.getHighByte()));
-            break;
-
-        case 0x25:
-            HL.setLowByte(sla(HL.getLowByte()));
-            break;
-
-        case 0x26:
-            mmu.writeByte(HL, sla(mmu.readByte(HL)));
-            break;
-
-        case 0x27:
-            AF.setHighByte(sla(AF.getHighByte()));
-            break;
-
-        case 0x28:
-            BC.setHighByte(sra(BC.getHighByte()));
-            break;
-
-        case 0x29:
-            BC.setLowByte(sra(BC.getLowByte()));
-            break;
-
-        case 0x2A:
-            DE.setHighByte(sra(DE.getHighByte()));
-            break;
-
-        case 0x2B:
-            DE.setLowByte(sra(DE.getLowByte()));
-            break;
-
-        case 0x2C:
-            HL.setHighByte(sra(HL.getHighByte()));
-            break;
-
-        case 0x2D:
-            HL.setLowByte(sra(HL.getLowByte()));
-            break;
-
-        case 0x2E:
-            mmu.writeByte(HL, sra(mmu.readByte(HL)));
-            break;
-
-        case 0x2F:
-            AF.setHighByte(sra(AF.getHighByte()));
-            break;
-
-        case 0x30:
-            BC.setHighByte(swap(BC.getHighByte()));
-            break;
-
-        case 0x31:
-            BC.setLowByte(swap(BC.getLowByte()));
-            break;
-
-        case 0x32:
-            DE.setHighByte(swap(DE.getHighByte()));
-            break;
-
-        case 0x33:
-            DE.setLowByte(swap(DE.getLowByte()));
-            break;
-
-        case 0x34:
-            HL.setHighByte(swap(HL.getHighByte()));
-            break;
-
-        case 0x35:
-            HL.setLowByte(swap(HL.getLowByte()));
-            break;
-
-        case 0x36:
-            mmu.writeByte(HL, swap(mmu.readByte(HL)));
-            break;
-
-        case 0x37:
-            AF.setHighByte(swap(AF.getHighByte()));
-            break;
-
-        case 0x38:
-            BC.setHighByte(srl(BC.getHighByte()));
-            break;
-
-        case 0x39:
-            BC.setLowByte(srl(BC.getLowByte()));
-            break;
-
-        case 0x3A:
-            DE.setHighByte(srl(DE.getHighByte()));
-            break;
-
-        case 0x3B:
-            DE.setLowByte(srl(DE.getLowByte()));
-            break;
-
-        case 0x3C:
-            HL.setHighByte(srl(HL.getHighByte()));
-            break;
-
-        case 0x3D:
-            HL.setLowByte(srl(HL.getLowByte()));
-            break;
-
-        case 0x3E:
-            mmu.writeByte(HL, srl(mmu.readByte(HL)));
-            break;
-
-        case 0x3F:
-            AF.setHighByte(srl(AF.getHighByte()));
-            break;
-
-        case 0x40:
-            bit(0, BC.getHighByte());
-            break;
-
-        case 0x41:
-            bit(0, BC.getLowByte());
-            break;
-
-        case 0x42:
-            bit(0, DE.getHighByte());
-            break;
-
-        case 0x43:
-            bit(0, DE.getLowByte());
-            break;
-
-        case 0x44:
-            bit(0, HL.getHighByte());
-            break;
-
-        case 0x45:
-            bit(0, HL.getLowByte());
-            break;
-
-        case 0x46:
-            bit(0, mmu.readByte(HL));
-            break;
-
-        case 0x47:
-            bit(0, AF.getHighByte());
-            break;
-
-        case 0x48:
-            bit(1, BC.getHighByte());
-            break;
-
-        case 0x49:
-            bit(1, BC.getLowByte());
-            break;
-
-        case 0x4A:
-            bit(1, DE.getHighByte());
-            break;
-
-        case 0x4B:
-            bit(1, DE.getLowByte());
-            break;
-
-        case 0x4C:
-            bit(1, HL.getHighByte());
-            break;
-
-        case 0x4D:
-            bit(1, HL.getLowByte());
-            break;
-
-        case 0x4E:
-            bit(1, mmu.readByte(HL));
-            break;
-
-        case 0x4F:
-            bit(1, AF.getHighByte());
-            break;
-
-        case 0x50:
-            bit(2, BC.getHighByte());
-            break;
-
-        case 0x51:
-            bit(2, BC.getLowByte());
-            break;
-
-        case 0x52:
-            bit(2, DE.getHighByte());
-            break;
-
-        case 0x53:
-            bit(2, DE.getLowByte());
-            break;
-
-        case 0x54:
-            bit(2, HL.getHighByte());
-            break;
-
-        case 0x55:
-            bit(2, HL.getLowByte());
-            break;
-
-        case 0x56:
-            bit(2, mmu.readByte(HL));
-            break;
-
-        case 0x57:
-            bit(2, AF.getHighByte());
-            break;
-
-        case 0x58:
-            bit(3, BC.getHighByte());
-            break;
-
-        case 0x59:
-            bit(3, BC.getLowByte());
-            break;
-
-        case 0x5A:
-            bit(3, DE.getHighByte());
-            break;
-
-        case 0x5B:
-            bit(3, DE.getLowByte());
-            break;
-
-        case 0x5C:
-            bit(3, HL.getHighByte());
-            break;
-
-        case 0x5D:
-            bit(3, HL.getLowByte());
-            break;
-
-        case 0x5E:
-            bit(3, mmu.readByte(HL));
-            break;
-
-        case 0x5F:
-            bit(3, AF.getHighByte());
-            break;
-
-        case 0x60:
-            bit(4, BC.getHighByte());
-            break;
-
-        case 0x61:
-            bit(4, BC.getLowByte());
-            break;
-
-        case 0x62:
-            bit(4, DE.getHighByte());
-            break;
-
-        case 0x63:
-            bit(4, DE.getLowByte());
-            break;
-
-        case 0x64:
-            bit(4, HL.getHighByte());
-            break;
-
-        case 0x65:
-            bit(4, HL.getLowByte());
-            break;
-
-        case 0x66:
-            bit(4, mmu.readByte(HL));
-            break;
-
-        case 0x67:
-            bit(4, AF.getHighByte());
-            break;
-
-        case 0x68:
-            bit(5, BC.getHighByte());
-            break;
-
-        case 0x69:
-            bit(5, BC.getLowByte());
-            break;
-
-        case 0x6A:
-            bit(5, DE.getHighByte());
-            break;
-
-        case 0x6B:
-            bit(5, DE.getLowByte());
-            break;
-
-        case 0x6C:
-            bit(5, HL.getHighByte());
-            break;
-
-        case 0x6D:
-            bit(5, HL.getLowByte());
-            break;
-
-        case 0x6E:
-            bit(5, mmu.readByte(HL));
-            break;
-
-        case 0x6F:
-            bit(5, AF.getHighByte());
-            break;
-
-        case 0x70:
-            bit(6, BC.getHighByte());
-            break;
-
-        case 0x71:
-            bit(6, BC.getLowByte());
-            break;
-
-        case 0x72:
-            bit(6, DE.getHighByte());
-            break;
-
-        case 0x73:
-            bit(6, DE.getLowByte());
-            break;
-
-        case 0x74:
-            bit(6, HL.getHighByte());
-            break;
-
-        case 0x75:
-            bit(6, HL.getLowByte());
-            break;
-
-        case 0x76:
-            bit(6, mmu.readByte(HL));
-            break;
-
-        case 0x77:
-            bit(6, AF.getHighByte());
-            break;
-
-        case 0x78:
-            bit(7, BC.getHighByte());
-            break;
-
-        case 0x79:
-            bit(7, BC.getLowByte());
-            break;
-
-        case 0x7A:
-            bit(7, DE.getHighByte());
-            break;
-
-        case 0x7B:
-            bit(7, DE.getLowByte());
-            break;
-
-        case 0x7C:
-            bit(7, HL.getHighByte());
-            break;
-
-        case 0x7D:
-            bit(7, HL.getLowByte());
-            break;
-
-        case 0x7E:
-            bit(7, mmu.readByte(HL));
-            break;
-
-        case 0x7F:
-            bit(7, AF.getHighByte());
-            break;
-
-        case 0x80:
-            BC.setHighByte(res(0, BC.getHighByte()));
-            break;
-
-        case 0x81:
-            BC.setLowByte(res(0, BC.getLowByte()));
-            break;
-
-        case 0x82:
-            DE.setHighByte(res(0, DE.getHighByte()));
-            break;
-
-        case 0x83:
-            DE.setLowByte(res(0, DE.getLowByte()));
-            break;
-
-        case 0x84:
-            HL.setHighByte(res(0, HL.getHighByte()));
-            break;
-
-        case 0x85:
-            HL.setLowByte(res(0, HL.getLowByte()));
-            break;
-
-        case 0x86:
-            mmu.writeByte(HL, res(0, mmu.readByte(HL)));
-            break;
-
-        case 0x87:
-            AF.setHighByte(res(0, AF.getHighByte()));
-            break;
-
-        case 0x88:
-            BC.setHighByte(res(1, BC.getHighByte()));
-            break;
-
-        case 0x89:
-            BC.setLowByte(res(1, BC.getLowByte()));
-            break;
-
-        case 0x8A:
-            DE.setHighByte(res(1, DE.getHighByte()));
-            break;
-
-        case 0x8B:
-            DE.setLowByte(res(1, DE.getLowByte()));
-            break;
-
-        case 0x8C:
-            HL.setHighByte(res(1, HL.getHighByte()));
-            break;
-
-        case 0x8D:
-            HL.setLowByte(res(1, HL.getLowByte()));
-            break;
-
-        case 0x8E:
-            mmu.writeByte(HL, res(1, mmu.readByte(HL)));
-            break;
-
-        case 0x8F:
-            AF.setHighByte(res(1, AF.getHighByte()));
-            break;
-
-        case 0x90:
-            BC.setHighByte(res(2, BC.getHighByte()));
-            break;
-
-        case 0x91:
-            BC.setLowByte(res(2, BC.getLowByte()));
-            break;
-
-        case 0x92:
-            DE.setHighByte(res(2, DE.getHighByte()));
-            break;
-
-        case 0x93:
-            DE.setLowByte(res(2, DE.getLowByte()));
-            break;
-
-        case 0x94:
-            HL.setHighByte(res(2, HL.getHighByte()));
-            break;
-
-        case 0x95:
-            HL.setLowByte(res(2, HL.getLowByte()));
-            break;
-
-        case 0x96:
-            mmu.writeByte(HL, res(2, mmu.readByte(HL)));
-            break;
-
-        case 0x97:
-            AF.setHighByte(res(2, AF.getHighByte()));
-            break;
-
-        case 0x98:
-            BC.setHighByte(res(3, BC.getHighByte()));
-            break;
-
-        case 0x99:
-            BC.setLowByte(res(3, BC.getLowByte()));
-            break;
-
-        case 0x9A:
-            DE.setHighByte(res(3, DE.getHighByte()));
-            break;
-
-        case 0x9B:
-            DE.setLowByte(res(3, DE.getLowByte()));
-            break;
-
-        case 0x9C:
-            HL.setHighByte(res(3, HL.getHighByte()));
-            break;
-
-        case 0x9D:
-            HL.setLowByte(res(3, HL.getLowByte()));
-            break;
-
-        case 0x9E:
-            mmu.writeByte(HL, res(3, mmu.readByte(HL)));
-            break;
-
-        case 0x9F:
-            AF.setHighByte(res(3, AF.getHighByte()));
-            break;
-
-        case 0xA0:
-            BC.setHighByte(res(4, BC.getHighByte()));
-            break;
-
-        case 0xA1:
-            BC.setLowByte(res(4, BC.getLowByte()));
-            break;
-
-        case 0xA2:
-            DE.setHighByte(res(4, DE.getHighByte()));
-            break;
-
-        case 0xA3:
-            DE.setLowByte(res(4, DE.getLowByte()));
-            break;
-
-        case 0xA4:
-            HL.setHighByte(res(4, HL.getHighByte()));
-            break;
-
-        case 0xA5:
-            HL.setLowByte(res(4, HL.getLowByte()));
-            break;
-
-        case 0xA6:
-            mmu.writeByte(HL, res(4, mmu.readByte(HL)));
-            break;
-
-        case 0xA7:
-            AF.setHighByte(res(4, AF.getHighByte()));
-            break;
-
-        case 0xA8:
-            BC.setHighByte(res(5, BC.getHighByte()));
-            break;
-
-        case 0xA9:
-            BC.setLowByte(res(5, BC.getLowByte()));
-            break;
-
-        case 0xAA:
-            DE.setHighByte(res(5, DE.getHighByte()));
-            break;
-
-        case 0xAB:
-            DE.setLowByte(res(5, DE.getLowByte()));
-            break;
-
-        case 0xAC:
-            HL.setHighByte(res(5, HL.getHighByte()));
-            break;
-
-        case 0xAD:
-            HL.setLowByte(res(5, HL.getLowByte()));
-            break;
-
-        case 0xAE:
-            mmu.writeByte(HL, res(5, mmu.readByte(HL)));
-            break;
-
-        case 0xAF:
-            AF.setHighByte(res(5, AF.getHighByte()));
-            break;
-
-        case 0xB0:
-            BC.setHighByte(res(6, BC.getHighByte()));
-            break;
-
-        case 0xB1:
-            BC.setLowByte(res(6, BC.getLowByte()));
-            break;
-
-        case 0xB2:
-            DE.setHighByte(res(6, DE.getHighByte()));
-            break;
-
-        case 0xB3:
-            DE.setLowByte(res(6, DE.getLowByte()));
-            break;
-
-        case 0xB4:
-            HL.setHighByte(res(6, HL.getHighByte()));
-            break;
-
-        case 0xB5:
-            HL.setLowByte(res(6, HL.getLowByte()));
-            break;
-
-        case 0xB6:
-            mmu.writeByte(HL, res(6, mmu.readByte(HL)));
-            break;
-
-        case 0xB7:
-            AF.setHighByte(res(6, AF.getHighByte()));
-            break;
-
-        case 0xB8:
-            BC.setHighByte(res(7, BC.getHighByte()));
-            break;
-
-        case 0xB9:
-            BC.setLowByte(res(7, BC.getLowByte()));
-            break;
-
-        case 0xBA:
-            DE.setHighByte(res(7, DE.getHighByte()));
-            break;
-
-        case 0xBB:
-            DE.setLowByte(res(7, DE.getLowByte()));
-            break;
-
-        case 0xBC:
-            HL.setHighByte(res(7, HL.getHighByte()));
-            break;
-
-        case 0xBD:
-            HL.setLowByte(res(7, HL.getLowByte()));
-            break;
-
-        case 0xBE:
-            mmu.writeByte(HL, res(7, mmu.readByte(HL)));
-            break;
-
-        case 0xBF:
-            AF.setHighByte(res(7, AF.getHighByte()));
-            break;
-
-        case 0xC0:
-            BC.setHighByte(set(0, BC.getHighByte()));
-            break;
-
-        case 0xC1:
-            BC.setLowByte(set(0, BC.getLowByte()));
-            break;
-
-        case 0xC2:
-            DE.setHighByte(set(0, DE.getHighByte()));
-            break;
+        /* JUMP */
+        instructions[0xC2] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) == 0) {
+                PC = fetchWord();
+                return 16;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0xC3] = new Instruction() { @Override int execute() {
+            PC = fetchWord();
+            return 16;
+        }};
+
+        instructions[0xCA] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) != 0) {
+                PC = fetchWord();
+                return 16;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0xD2] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) == 0) {
+                PC = fetchWord();
+                return 16;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
+
+        instructions[0xDA] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) != 0) {
+                PC = fetchWord();
+                return 16;
+            }
+            PC = (PC + 2) & 0xFFFF;
+            return 12;
+        }};
 
-        case 0xC3:
-            DE.setLowByte(set(0, DE.getLowByte()));
-            break;
+        instructions[0xE9] = new Instruction() { @Override int execute() {
+            PC = getHL();
+            return 4;
+        }};
 
-        case 0xC4:
-            HL.setHighByte(set(0, HL.getHighByte()));
-            break;
+        /*
+         * Load Commands 8bit
+         */
+        /* LD nn,n - Put value nn into n */
+        instructions[0x06] = new Instruction() { @Override int execute() {
+            B = fetchByte();
+            return 8;
+        }};
+
+        instructions[0x0E] = new Instruction() { @Override int execute() {
+            C = fetchByte();
+            return 8;
+        }};
+
+        instructions[0x16] = new Instruction() { @Override int execute() {
+            D = fetchByte();
+            return 8;
+        }};
+
+        instructions[0x1E] = new Instruction() { @Override int execute() {
+            E = fetchByte();
+            return 8;
+        }};
+
+        instructions[0x26] = new Instruction() { @Override int execute() {
+            H = fetchByte();
+            return 8;
+        }};
+
+        instructions[0x2E] = new Instruction() { @Override int execute() {
+            L = fetchByte();
+            return 8;
+        }};
 
-        case 0xC5:
-            HL.setLowByte(set(0, HL.getLowByte()));
-            break;
+        /* LD r1,r2 - Put value r2 into r1 */
+        instructions[0x41] = new Instruction() { @Override int execute() {
+            B = C;
+            return 4;
+        }};
+
+        instructions[0x42] = new Instruction() { @Override int execute() {
+            B = D;
+            return 4;
+        }};
+
+        instructions[0x43] = new Instruction() { @Override int execute() {
+            B = E;
+            return 4;
+        }};
+
+        instructions[0x44] = new Instruction() { @Override int execute() {
+            B = H;
+            return 4;
+        }};
+
+        instructions[0x45] = new Instruction() { @Override int execute() {
+            B = L;
+            return 4;
+        }};
+
+        instructions[0x46] = new Instruction() { @Override int execute() {
+            B = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0x47] = new Instruction() { @Override int execute() {
+            B = A;
+            return 4;
+        }};
+
+        instructions[0x48] = new Instruction() { @Override int execute() {
+            C = B;
+            return 4;
+        }};
+
+        instructions[0x4A] = new Instruction() { @Override int execute() {
+            C = D;
+            return 4;
+        }};
+
+        instructions[0x4B] = new Instruction() { @Override int execute() {
+            C = E;
+            return 4;
+        }};
+
+        instructions[0x4C] = new Instruction() { @Override int execute() {
+            C = H;
+            return 4;
+        }};
+
+        instructions[0x4D] = new Instruction() { @Override int execute() {
+            C = L;
+            return 4;
+        }};
+
+        instructions[0x4E] = new Instruction() { @Override int execute() {
+            C = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0x4F] = new Instruction() { @Override int execute() {
+            C = A;
+            return 4;
+        }};
+
+        instructions[0x50] = new Instruction() { @Override int execute() {
+            D = B;
+            return 4;
+        }};
+
+        instructions[0x51] = new Instruction() { @Override int execute() {
+            D = C;
+            return 4;
+        }};
+
+        instructions[0x53] = new Instruction() { @Override int execute() {
+            D = E;
+            return 4;
+        }};
+
+        instructions[0x54] = new Instruction() { @Override int execute() {
+            D = H;
+            return 4;
+        }};
+
+        instructions[0x55] = new Instruction() { @Override int execute() {
+            D = L;
+            return 4;
+        }};
+
+        instructions[0x56] = new Instruction() { @Override int execute() {
+            D = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0x57] = new Instruction() { @Override int execute() {
+            D = A;
+            return 4;
+        }};
+
+        instructions[0x58] = new Instruction() { @Override int execute() {
+            E = B;
+            return 4;
+        }};
+
+        instructions[0x59] = new Instruction() { @Override int execute() {
+            E = C;
+            return 4;
+        }};
+
+        instructions[0x5A] = new Instruction() { @Override int execute() {
+            E = D;
+            return 4;
+        }};
+
+        instructions[0x5C] = new Instruction() { @Override int execute() {
+            E = H;
+            return 4;
+        }};
+
+        instructions[0x5D] = new Instruction() { @Override int execute() {
+            E = L;
+            return 4;
+        }};
+
+        instructions[0x5E] = new Instruction() { @Override int execute() {
+            E = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0x5F] = new Instruction() { @Override int execute() {
+            E = A;
+            return 4;
+        }};
+
+        instructions[0x60] = new Instruction() { @Override int execute() {
+            H = B;
+            return 4;
+        }};
+
+        instructions[0x61] = new Instruction() { @Override int execute() {
+            H = C;
+            return 4;
+        }};
+
+        instructions[0x62] = new Instruction() { @Override int execute() {
+            H = D;
+            return 4;
+        }};
+
+        instructions[0x63] = new Instruction() { @Override int execute() {
+            H = E;
+            return 4;
+        }};
+
+        instructions[0x65] = new Instruction() { @Override int execute() {
+            H = L;
+            return 4;
+        }};
+
+        instructions[0x66] = new Instruction() { @Override int execute() {
+            H = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0x67] = new Instruction() { @Override int execute() {
+            H = A;
+            return 4;
+        }};
+
+        instructions[0x68] = new Instruction() { @Override int execute() {
+            L = B;
+            return 4;
+        }};
+
+        instructions[0x69] = new Instruction() { @Override int execute() {
+            L = C;
+            return 4;
+        }};
+
+        instructions[0x6A] = new Instruction() { @Override int execute() {
+            L = D;
+            return 4;
+        }};
+
+        instructions[0x6B] = new Instruction() { @Override int execute() {
+            L = E;
+            return 4;
+        }};
+
+        instructions[0x6C] = new Instruction() { @Override int execute() {
+            L = H;
+            return 4;
+        }};
+
+        instructions[0x6E] = new Instruction() { @Override int execute() {
+            L = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0x6F] = new Instruction() { @Override int execute() {
+            L = A;
+            return 4;
+        }};
+
+        instructions[0x70] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), B);
+            return 8;
+        }};
+
+        instructions[0x71] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), C);
+            return 8;
+        }};
+
+        instructions[0x72] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), D);
+            return 8;
+        }};
+
+        instructions[0x73] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), E);
+            return 8;
+        }};
+
+        instructions[0x74] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), H);
+            return 8;
+        }};
+
+        instructions[0x75] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), L);
+            return 8;
+        }};
+
+        instructions[0x36] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), fetchByte());
+            return 12;
+        }};
 
-        case 0xC6:
-            mmu.writeByte(HL, set(0, mmu.readByte(HL)));
-            break;
+        /* LD A,n - Put value n into A */
+        instructions[0x78] = new Instruction() { @Override int execute() {
+            A = B;
+            return 4;
+        }};
+
+        instructions[0x79] = new Instruction() { @Override int execute() {
+            A = C;
+            return 4;
+        }};
+
+        instructions[0x7A] = new Instruction() { @Override int execute() {
+            A = D;
+            return 4;
+        }};
+
+        instructions[0x7B] = new Instruction() { @Override int execute() {
+            A = E;
+            return 4;
+        }};
+
+        instructions[0x7C] = new Instruction() { @Override int execute() {
+            A = H;
+            return 4;
+        }};
+
+        instructions[0x7D] = new Instruction() { @Override int execute() {
+            A = L;
+            return 4;
+        }};
+
+        instructions[0x0A] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(getBC());
+            return 8;
+        }};
+
+        instructions[0x1A] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(getDE());
+            return 8;
+        }};
+
+        instructions[0x7E] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(getHL());
+            return 8;
+        }};
+
+        instructions[0xFA] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(fetchWord());
+            return 16;
+        }};
+
+        instructions[0x3E] = new Instruction() { @Override int execute() {
+            A = fetchByte();
+            return 8;
+        }};
 
-        case 0xC7:
-            AF.setHighByte(set(0, AF.getHighByte()));
-            break;
+        /* LD n,A */
+        instructions[0x02] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getBC(), A);
+            return 8;
+        }};
+
+        instructions[0x12] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getDE(), A);
+            return 8;
+        }};
+
+        instructions[0x77] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), A);
+            return 8;
+        }};
+
+        instructions[0xEA] = new Instruction() { @Override int execute() {
+            mmu.writeByte(fetchWord(), A);
+            return 16;
+        }};
 
-        case 0xC8:
-            BC.setHighByte(set(1, BC.getHighByte()));
-            break;
+        /* LD A,(C) */
+        instructions[0xF2] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(0xFF00 + C);
+            PC = (PC + 1) & 0xFFFF;
+            return 8;
+        }};
 
-        case 0xC9:
-            BC.setLowByte(set(1, BC.getLowByte()));
-            break;
+        /* LD (C),A */
+        instructions[0xE2] = new Instruction() { @Override int execute() {
+            mmu.writeByte(0xFF00 + C, A);
+            return 8;
+        }};
 
-        case 0xCA:
-            DE.setHighByte(set(1, DE.getHighByte()));
-            break;
+        /* LDD A,(HL) */
+        instructions[0x3A] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(getHL());
+            setHL(getHL() - 1);
+            return 8;
+        }};
 
-        case 0xCB:
-            DE.setLowByte(set(1, DE.getLowByte()));
-            break;
+        /* LDD (HL),A */
+        instructions[0x32] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), A);
+            setHL(getHL() - 1);
+            return 8;
+        }};
 
-        case 0xCC:
-            HL.setHighByte(set(1, HL.getHighByte()));
-            break;
+        /* LDI A,(HL) */
+        instructions[0x2A] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(getHL());
+            setHL(getHL() + 1);
+            return 8;
+        }};
 
-        case 0xCD:
-            HL.setLowByte(set(1, HL.getLowByte()));
-            break;
+        /* LDI (HL),A */
+        instructions[0x22] = new Instruction() { @Override int execute() {
+            mmu.writeByte(getHL(), A);
+            setHL(getHL() + 1);
+            return 8;
+        }};
 
-        case 0xCE:
-            mmu.writeByte(HL, set(1, mmu.readByte(HL)));
-            break;
+        /* LDH (n),A */
+        instructions[0xE0] = new Instruction() { @Override int execute() {
+            mmu.writeByte(0xFF00 + fetchByte(), A);
+            return 12;
+        }};
 
-        case 0xCF:
-            AF.setHighByte(set(1, AF.getHighByte()));
-            break;
+        /* LDH A,(n) */
+        instructions[0xF0] = new Instruction() { @Override int execute() {
+            A = mmu.readByte(0xFF00 + fetchByte());
+            return 12;
+        }};
 
-        case 0xD0:
-            BC.setHighByte(set(2, BC.getHighByte()));
-            break;
+        /*
+         * Load Commands 16bit
+         */
+        /* LD n,nn */
+        instructions[0x01] = new Instruction() { @Override int execute() {
+            setBC(fetchWord());
+            return 12;
+        }};
+
+        instructions[0x11] = new Instruction() { @Override int execute() {
+            setDE(fetchWord());
+            return 12;
+        }};
+
+        instructions[0x21] = new Instruction() { @Override int execute() {
+            setHL(fetchWord());
+            return 12;
+        }};
+
+        instructions[0x31] = new Instruction() { @Override int execute() {
+            SP = fetchWord();
+            return 12;
+        }};
 
-        case 0xD1:
-            BC.setLowByte(set(2, BC.getLowByte()));
-            break;
+        /* LD SP,HL */
+        instructions[0xF9] = new Instruction() { @Override int execute() {
+            SP = getHL();
+            return 8;
+        }};
 
-        case 0xD2:
-            DE.setHighByte(set(2, DE.getHighByte()));
-            break;
+        /* LDHL SP,n */
+        instructions[0xF8] = new Instruction() { @Override int execute() {
+            setHL(addSP(fetchSignedByte()));
+            return 12;
+        }};
 
-        case 0xD3:
-            DE.setLowByte(set(2, DE.getLowByte()));
-            break;
+        /* LD (nn),SP */
+        instructions[0x08] = new Instruction() { @Override int execute() {
+            int addr = fetchWord();
+            mmu.writeByte(addr, SP & 0xFF);
+            addr = (addr + 1) & 0xFFFF;
+            mmu.writeByte(addr, SP >> 8);
+            return 20;
+        }};
 
-        case 0xD4:
-            HL.setHighByte(set(2, HL.getHighByte()));
-            break;
+        /* OR */
+        instructions[0xB0] = new Instruction() { @Override int execute() {
+            orA(B);
+            return 4;
+        }};
+
+        instructions[0xB1] = new Instruction() { @Override int execute() {
+            orA(C);
+            return 4;
+        }};
+
+        instructions[0xB2] = new Instruction() { @Override int execute() {
+            orA(D);
+            return 4;
+        }};
+
+        instructions[0xB3] = new Instruction() { @Override int execute() {
+            orA(E);
+            return 4;
+        }};
+
+        instructions[0xB4] = new Instruction() { @Override int execute() {
+            orA(H);
+            return 4;
+        }};
+
+        instructions[0xB5] = new Instruction() { @Override int execute() {
+            orA(L);
+            return 4;
+        }};
+
+        instructions[0xB6] = new Instruction() { @Override int execute() {
+            orA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0xB7] = new Instruction() { @Override int execute() {
+            orA(A);
+            return 4;
+        }};
+
+        instructions[0xF6] = new Instruction() { @Override int execute() {
+            orA(fetchByte());
+            return 8;
+        }};
 
-        case 0xD5:
-            HL.setLowByte(set(2, HL.getLowByte()));
-            break;
+        /* POP nn */
+        instructions[0xF1] = new Instruction() { @Override int execute() {
+            setAF(pop());
+            return 12;
+        }};
+
+        instructions[0xC1] = new Instruction() { @Override int execute() {
+            setBC(pop());
+            return 12;
+        }};
+
+        instructions[0xD1] = new Instruction() { @Override int execute() {
+            setDE(pop());
+            return 12;
+        }};
+
+        instructions[0xE1] = new Instruction() { @Override int execute() {
+            setHL(pop());
+            return 12;
+        }};
 
-        case 0xD6:
-            mmu.writeByte(HL, set(2, mmu.readByte(HL)));
-            break;
+        /* PUSH nn */
+        instructions[0xF5] = new Instruction() { @Override int execute() {
+            push(getAF());
+            return 16;
+        }};
+
+        instructions[0xC5] = new Instruction() { @Override int execute() {
+            push(getBC());
+            return 16;
+        }};
+
+        instructions[0xD5] = new Instruction() { @Override int execute() {
+            push(getDE());
+            return 16;
+        }};
+
+        instructions[0xE5] = new Instruction() { @Override int execute() {
+            push(getHL());
+            return 16;
+        }};
 
-        case 0xD7:
-            AF.setHighByte(set(2, AF.getHighByte()));
-            break;
+        /* RET */
+        instructions[0xC9] = new Instruction() { @Override int execute() {
+            PC = pop();
+            return 16;
+        }};
 
-        case 0xD8:
-            BC.setHighByte(set(3, BC.getHighByte()));
-            break;
+        /* RET cc */
+        instructions[0xC0] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) == 0) {
+                PC = pop();
+                return 20;
+            }
+            return 8;
+        }};
 
-        case 0xD9:
-            BC.setLowByte(set(3, BC.getLowByte()));
-            break;
+        instructions[0xC8] = new Instruction() { @Override int execute() {
+            if ((getF() & Z_FLAG) != 0) {
+                PC = pop();
+                return 20;
+            }
+            return 8;
+        }};
 
-        case 0xDA:
-            DE.setHighByte(set(3, DE.getHighByte()));
-            break;
+        instructions[0xD0] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) == 0) {
+                PC = pop();
+                return 20;
+            }
+            return 8;
+        }};
 
-        case 0xDB:
-            DE.setLowByte(set(3, DE.getLowByte()));
-            break;
+        instructions[0xD8] = new Instruction() { @Override int execute() {
+            if ((getF() & C_FLAG) != 0) {
+                PC = pop();
+                return 20;
+            }
+            return 8;
+        }};
 
-        case 0xDC:
-            HL.setHighByte(set(3, HL.getHighByte()));
-            break;
+        /* RETI */
+        instructions[0xD9] = new Instruction() { @Override int execute() {
+            interrupts.scheduleEnable();
+            PC = pop();
+            return 16;
+        }};
 
-        case 0xDD:
-            HL.setLowByte(set(3, HL.getLowByte()));
-            break;
+        /* RLA */
+        instructions[0x17] = new Instruction() { @Override int execute() {
+            int carry = (getF() & C_FLAG) >> 4;
+            setF((A & 0x80) >> 3);
+            A = ((A << 1) | carry) & 0xFF;
+            return 4;
+        }};
 
-        case 0xDE:
-            mmu.writeByte(HL, set(3, mmu.readByte(HL)));
-            break;
+        /* RLCA */
+        instructions[0x07] = new Instruction() { @Override int execute() {
+            int carry = (A & 0x80) >> 7;
+            setF(carry << 4);
+            A = ((A << 1) | carry) & 0xFF;
+            return 4;
+        }};
 
-        case 0xDF:
-            AF.setHighByte(set(3, AF.getHighByte()));
-            break;
+        /* RRA */
+        instructions[0x1F] = new Instruction() { @Override int execute() {
+            int carry = (getF() & C_FLAG) >> 4;
+            setF((A & 0x01) << 4);
+            A = ((carry << 7) | (A >> 1)) & 0xFF;
+            return 4;
+        }};
 
-        case 0xE0:
-            BC.setHighByte(set(4, BC.getHighByte()));
-            break;
+        /* RRCA */
+        instructions[0x0F] = new Instruction() { @Override int execute() {
+            int carry = (A & 0x01);
+            setF(carry << 4);
+            A = ((carry << 7) | (A >> 1)) & 0xFF;
+            return 4;
+        }};
 
-        case 0xE1:
-            BC.setLowByte(set(4, BC.getLowByte()));
-            break;
+        /* RST */
+        instructions[0xC7] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x00;
+            return 16;
+        }};
+
+        instructions[0xCF] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x08;
+            return 16;
+        }};
+
+        instructions[0xD7] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x10;
+            return 16;
+        }};
+
+        instructions[0xDF] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x18;
+            return 16;
+        }};
+
+        instructions[0xE7] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x20;
+            return 16;
+        }};
+
+        instructions[0xEF] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x28;
+            return 16;
+        }};
+
+        instructions[0xF7] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x30;
+            return 16;
+        }};
+
+        instructions[0xFF] = new Instruction() { @Override int execute() {
+            push(PC);
+            PC = 0x38;
+            return 16;
+        }};
 
-        case 0xE2:
-            DE.setHighByte(set(4, DE.getHighByte()));
-            break;
+        /* SCF */
+        instructions[0x37] = new Instruction() { @Override int execute() {
+            setF((getF() & Z_FLAG) | C_FLAG);
+            return 4;
+        }};
 
-        case 0xE3:
-            DE.setLowByte(set(4, DE.getLowByte()));
-            break;
+        /* STOP */
+        instructions[0x10] = new Instruction() { @Override int execute() {
+            PC = (PC + 1) & 0xFFFF;
+            return 4;
+        }};
 
-        case 0xE4:
-            HL.setHighByte(set(4, HL.getHighByte()));
-            break;
+        /* DI */
+        instructions[0xF3] = new Instruction() { @Override int execute() {
+            interrupts.scheduleDisable();
+            return 4;
+        }};
 
-        case 0xE5:
-            HL.setLowByte(set(4, HL.getLowByte()));
-            break;
+        /* IE */
+        instructions[0xFB] = new Instruction() { @Override int execute() {
+            interrupts.scheduleEnable();
+            return 4;
+        }};
 
-        case 0xE6:
-            mmu.writeByte(HL, set(4, mmu.readByte(HL)));
-            break;
+        /* SUB n */
+        instructions[0x90] = new Instruction() { @Override int execute() {
+            subA(B);
+            return 4;
+        }};
+
+        instructions[0x91] = new Instruction() { @Override int execute() {
+            subA(C);
+            return 4;
+        }};
+
+        instructions[0x92] = new Instruction() { @Override int execute() {
+            subA(D);
+            return 4;
+        }};
+
+        instructions[0x93] = new Instruction() { @Override int execute() {
+            subA(E);
+            return 4;
+        }};
+
+        instructions[0x94] = new Instruction() { @Override int execute() {
+            subA(H);
+            return 4;
+        }};
+
+        instructions[0x95] = new Instruction() { @Override int execute() {
+            subA(L);
+            return 4;
+        }};
+
+        instructions[0x96] = new Instruction() { @Override int execute() {
+            subA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0x97] = new Instruction() { @Override int execute() {
+            subA(A);
+            return 4;
+        }};
+
+        instructions[0xD6] = new Instruction() { @Override int execute() {
+            subA(fetchByte());
+            return 8;
+        }};
 
-        case 0xE7:
-            AF.setHighByte(set(4, AF.getHighByte()));
-            break;
+        /* SBC A,n */
+        instructions[0x98] = new Instruction() { @Override int execute() {
+            sbcA(B);
+            return 4;
+        }};
+
+        instructions[0x99] = new Instruction() { @Override int execute() {
+            sbcA(C);
+            return 4;
+        }};
+
+        instructions[0x9A] = new Instruction() { @Override int execute() {
+            sbcA(D);
+            return 4;
+        }};
+
+        instructions[0x9B] = new Instruction() { @Override int execute() {
+            sbcA(E);
+            return 4;
+        }};
+
+        instructions[0x9C] = new Instruction() { @Override int execute() {
+            sbcA(H);
+            return 4;
+        }};
+
+        instructions[0x9D] = new Instruction() { @Override int execute() {
+            sbcA(L);
+            return 4;
+        }};
+
+        instructions[0x9E] = new Instruction() { @Override int execute() {
+            sbcA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0x9F] = new Instruction() { @Override int execute() {
+            sbcA(A);
+            return 4;
+        }};
+
+        instructions[0xDE] = new Instruction() { @Override int execute() {
+            sbcA(fetchByte());
+            return 8;
+        }};
 
-        case 0xE8:
-            BC.setHighByte(set(5, BC.getHighByte()));
-            break;
+        /* XOR */
+        instructions[0xA8] = new Instruction() { @Override int execute() {
+            xorA(B);
+            return 4;
+        }};
+
+        instructions[0xA9] = new Instruction() { @Override int execute() {
+            xorA(C);
+            return 4;
+        }};
+
+        instructions[0xAA] = new Instruction() { @Override int execute() {
+            xorA(D);
+            return 4;
+        }};
+
+        instructions[0xAB] = new Instruction() { @Override int execute() {
+            xorA(E);
+            return 4;
+        }};
+
+        instructions[0xAC] = new Instruction() { @Override int execute() {
+            xorA(H);
+            return 4;
+        }};
+
+        instructions[0xAD] = new Instruction() { @Override int execute() {
+            xorA(L);
+            return 4;
+        }};
+
+        instructions[0xAE] = new Instruction() { @Override int execute() {
+            xorA(mmu.readByte(getHL()));
+            return 8;
+        }};
+
+        instructions[0xAF] = new Instruction() { @Override int execute() {
+            xorA(A);
+            return 4;
+        }};
+
+        instructions[0xEE] = new Instruction() { @Override int execute() {
+            xorA(fetchByte());
+            return 8;
+        }};
+
+        instructions[0xCB] = new Instruction() { @Override int execute() {
+            return cbInstructions[fetchByte()].execute();
+        }};
+    }
 
-        case 0xE9:
-            BC.setLowByte(set(5, BC.getLowByte()));
-            break;
+    private void initCBInstructions() {
+
+        for (int r = 0; r < 8; r++) {
+
+            final int reg = r;
+            final int cycles = (reg == 6) ? 16 : 8;
+
+            cbInstructions[0x00 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, rlc(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x08 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, rrc(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x10 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, rl(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x18 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, rr(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x20 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, sla(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x28 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, sra(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x30 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, swap(getRegister(reg)));
+                return cycles;
+            }};
+
+            cbInstructions[0x38 | reg] = new Instruction() { @Override int execute() {
+                setRegister(reg, srl(getRegister(reg)));
+                return cycles;
+            }};
+
+            for (int b = 0; b < 8; b++) {
+
+                final int n = b;
+                // BIT n,(HL) only reads memory
+                final int bitCycles = (reg == 6) ? 12 : 8;
+
+                cbInstructions[0x40 | (n << 3) | reg] = new Instruction() { @Override int execute() {
+                    bit(n, getRegister(reg));
+                    return bitCycles;
+                }};
+
+                cbInstructions[0x80 | (n << 3) | reg] = new Instruction() { @Override int execute() {
+                    setRegister(reg, res(n, getRegister(reg)));
+                    return cycles;
+                }};
+
+                cbInstructions[0xC0 | (n << 3) | reg] = new Instruction() { @Override int execute() {
+                    setRegister(reg, set(n, getRegister(reg)));
+                    return cycles;
+                }};
+            }
+        }
+    }
 
-        case 0xEA:
-            DE.setHighByte(set(5, DE.getHighByte()));
-            break;
+    /**
+     * Fused handlers for the {@link Fusion} sequences, indexed by the first
+     * opcode. They fall back to the first instruction alone when needed.
+     */
+    private void initFusedInstructions() {
+
+        fusedInstructions[0x2A] = new Instruction() { @Override int execute() {
+            int de = getDE();
+            if (16 >= fusionCycleLimit || interrupts.needsAttention()
+                    || de < 0x8000 || de >= 0xFF00) {
+                fusedLength = 1;
+                return instructions[0x2A].execute();
+            }
 
-        case 0xEB:
-            DE.setLowByte(set(5, DE.getLowByte()));
-            break;
+            int hl = getHL();
+            A = mmu.readByte(hl);
+            setHL(hl + 1);
+            mmu.writeByte(de, A);
+            setDE(de + 1);
+            PC = (PC + 2) & 0xFFFF;
 
-        case 0xEC:
-            HL.setHighByte(set(5, HL.getHighByte()));
-            break;
+            fusionCounts[Fusion.MEMCPY.ordinal()]++;
+            fusedLength = 3;
+            return 8 + 8 + 8;
+        }};
 
-        case 0xED:
-            HL.setLowByte(set(5, HL.getLowByte()));
-            break;
+        for (int r = 0; r < 8; r++) {
 
-        case 0xEE:
-            mmu.writeByte(HL, set(5, mmu.readByte(HL)));
-            break;
+            if (r == 6) {
 
-        case 0xEF:
-            AF.setHighByte(set(5, AF.getHighByte()));
-            break;
+                // DEC (HL) touches memory
+                continue;
+            }
 
-        case 0xF0:
-            BC.setHighByte(set(6, BC.getHighByte()));
-            break;
+            final int reg = r;
+            final int opcode = 0x05 | (reg << 3);
 
-        case 0xF1:
-            BC.setLowByte(set(6, BC.getLowByte()));
-            break;
+            fusedInstructions[opcode] = new Instruction() { @Override int execute() {
+                if (4 >= fusionCycleLimit || interrupts.needsAttention()) {
+                    fusedLength = 1;
+                    return instructions[opcode].execute();
+                }
 
-        case 0xF2:
-            DE.setHighByte(set(6, DE.getHighByte()));
-            break;
+                int val = dec8bit(getRegister(reg));
+                setRegister(reg, val);
+                PC = (PC + 1) & 0xFFFF;
 
-        case 0xF3:
-            DE.setLowByte(set(6, DE.getLowByte()));
-            break;
+                fusionCounts[Fusion.DEC_JR_NZ.ordinal()]++;
+                fusedLength = 2;
+                if (val != 0) {
+                    return 4 + jumpRelative();
+                }
+                PC = (PC + 1) & 0xFFFF;
+                return 4 + 8;
+            }};
+        }
 
-        case 0xF4:
-            HL.setHighByte(set(6, HL.getHighByte()));
-            break;
+        fusedInstructions[0xF0] = new Instruction() { @Override int execute() {
+            if (12 + 8 >= fusionCycleLimit || interrupts.needsAttention()) {
+                fusedLength = 1;
+                return instructions[0xF0].execute();
+            }
 
-        case 0xF5:
-            HL.setLowByte(set(6, HL.getLowByte()));
-            break;
+            A = mmu.readByte(0xFF00 + fetchByte());
+            PC = (PC + 1) & 0xFFFF;
+            cpA(fetchByte());
 
-        case 0xF6:
-            mmu.writeByte(HL, set(6, mmu.readByte(HL)));
-            break;
+            fusionCounts[Fusion.POLL.ordinal()]++;
+            fusedLength = 3;
+            return 12 + 8 + instructions[fetchByte()].execute();
+        }};
+    }
 
-        case 0xF7:
-            AF.setHighByte(set(6, AF.getHighByte()));
-            break;
+    /**
+     * Reads an 8 bit operand using the register encoding of the opcode: B, C,
+     * D, E, H, L, (HL), A
+     */
+    private int getRegister(int reg) {
+
+        switch (reg) {
+        case 0:
+            return B;
+        case 1:
+            return C;
+        case 2:
+            return D;
+        case 3:
+            return E;
+        case 4:
+            return H;
+        case 5:
+            return L;
+        case 6:
+            return mmu.readByte(getHL());
+        default:
+            return A;
+        }
+    }
 
-        case 0xF8:
-            BC.setHighByte(set(7, BC.getHighByte()));
-            break;
+    private void setRegister(int reg, int val) {
 
-        case 0xF9:
-            BC.setLowByte(set(7, BC.getLowByte()));
+        switch (reg) {
+        case 0:
+            B = val;
             break;
-
-        case 0xFA:
-            DE.setHighByte(set(7, DE.getHighByte()));
+        case 1:
+            C = val;
             break;
-
-        case 0xFB:
-            DE.setLowByte(set(7, DE.getLowByte()));
+        case 2:
+            D = val;
             break;
-
-        case 0xFC:
-            HL.setHighByte(set(7, HL.getHighByte()));
+        case 3:
+            E = val;
             break;
-
-        case 0xFD:
-            HL.setLowByte(set(7, HL.getLowByte()));
+        case 4:
+            H = val;
             break;
-
-        case 0xFE:
-            mmu.writeByte(HL, set(7, mmu.readByte(HL)));
+        case 5:
+            L = val;
             break;
-
-        case 0xFF:
-            AF.setHighByte(set(7, AF.getHighByte()));
+        case 6:
+            mmu.writeByte(getHL(), val);
             break;
-
         default:
-            System.out.println("Unrecognized CB OpCode: "
-                    + Integer.toHexString(op));
+            A = val;
             break;
         }
-
     }
 
     private void bit(int n, int val) {
 
-        int F = (AF.getLowByte() & C_FLAG) | H_FLAG;
-        F &= ~Z_FLAG;
+        int flags = (getF() & C_FLAG) | H_FLAG;
         if (((0x1 << n) & val) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
     }
 
     private int set(int n, int val) {
@@ -2621,24 +2301,24 @@ public class Z80 {
 
     private int rl(int val) {
 
-        int carry = (AF.getLowByte() & C_FLAG) >> 4;
-        int F = (val & 0x80) >> 3;
+        int carry = (getF() & C_FLAG) >> 4;
+        int flags = (val & 0x80) >> 3;
         val = (val << 1) | carry;
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
 
     private int rr(int val) {
 
-        int carry = (AF.getLowByte() & C_FLAG) >> 4;
-        int F = (val & 0x01) << 4;
+        int carry = (getF() & C_FLAG) >> 4;
+        int flags = (val & 0x01) << 4;
         val = (val >> 1) | (carry << 7);
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
@@ -2646,59 +2326,57 @@ public class Z80 {
     private int rlc(int val) {
 
         val = (val << 1) | (val >> 7);
-        int F = 0;
-        F = (val & 0x1) << 4;
+        int flags = (val & 0x1) << 4;
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
 
     private int rrc(int val) {
 
-        int F = 0;
-        F = (val & 0x1) << 4;
+        int flags = (val & 0x1) << 4;
 
         val = (val >> 1) | (val << 7);
 
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
 
     private int sla(int val) {
 
-        int F = (val & 0x80) >> 3;
+        int flags = (val & 0x80) >> 3;
         val = val << 1;
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
 
     private int sra(int val) {
 
-        int F = (val & 0x01) << 4;
+        int flags = (val & 0x01) << 4;
         val = (val & 0x80) | (val >> 1);
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
 
     private int srl(int val) {
 
-        int F = (val & 0x01) << 4;
+        int flags = (val & 0x01) << 4;
         val = val >> 1;
         val &= ~(0x80);
         if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            flags |= Z_FLAG;
+        setF(flags);
 
         return val & 0xFF;
     }
@@ -2706,222 +2384,342 @@ public class Z80 {
     private int swap(int val) {
 
         val = ((val >> 4) | (val << 4)) & 0xFF;
-        int F = 0;
+        int flags = 0;
         if (val == 0)
-            F = Z_FLAG;
-        AF.setLowByte(F);
+            flags = Z_FLAG;
+        setF(flags);
 
         return val;
     }
 
     private int addSP(int val) {
 
-        int tempSP = SP.getWord() + val;
-        int F = 0;
-        if ((((SP.getWord() & 0xFF) + (val & 0xFF)) & 0x100) == 0x100)
-            F |= C_FLAG;
+        int tempSP = SP + val;
+        int flags = 0;
+        if ((((SP & 0xFF) + (val & 0xFF)) & 0x100) == 0x100)
+            flags |= C_FLAG;
 
-        if ((((SP.getWord() & 0x0F) + (val & 0x0F)) & 0x10) == 0x10)
-            F |= H_FLAG;
-        AF.setLowByte(F);
+        if ((((SP & 0x0F) + (val & 0x0F)) & 0x10) == 0x10)
+            flags |= H_FLAG;
+        setF(flags);
 
         return (tempSP & 0xFFFF);
     }
 
     private void adcA(int val) {
 
-        int carry = ((AF.getLowByte() & C_FLAG) >> 4);
-        int temp = AF.getHighByte() + val + carry;
+        int carry = getCarry() >> 4;
 
-        int F = 0;
-        if ((((AF.getHighByte() & 0x0F) + (val & 0x0F) + carry) & 0x10) == 0x10)
-            F |= H_FLAG;
-        if ((temp & 0x100) == 0x100)
-            F |= C_FLAG;
-        if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+        if (lazyFlags) {
+
+            deferFlags(FLAGS_ADD, A, val, carry);
+        } else {
+
+            setF(addFlags(A, val, carry));
+        }
 
-        AF.setHighByte(temp);
+        A = (A + val + carry) & 0xFF;
     }
 
     private void addA(int val) {
 
-        int temp = AF.getHighByte() + val;
+        if (lazyFlags) {
 
-        int F = 0;
-        if ((((AF.getHighByte() & 0x0F) + (val & 0x0F)) & 0x10) == 0x10)
-            F |= H_FLAG;
-        if ((temp & 0x100) == 0x100)
-            F |= C_FLAG;
-        if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            deferFlags(FLAGS_ADD, A, val, 0);
+        } else {
 
-        AF.setHighByte(temp);
+            setF(addFlags(A, val, 0));
+        }
+
+        A = (A + val) & 0xFF;
     }
 
     private void andA(int val) {
 
-        int temp = AF.getHighByte() & val;
+        A &= val;
 
-        int F = H_FLAG;
-        if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+        if (lazyFlags) {
+
+            deferFlags(FLAGS_AND, A, 0, 0);
+        } else {
 
-        AF.setHighByte(temp);
+            setF(logicFlags(A) | H_FLAG);
+        }
     }
 
-    private void addHL16bit(Word val) {
+    private void addHL16bit(int val) {
 
-        int temp = HL.getWord() + val.getWord();
-        int F = AF.getLowByte() & Z_FLAG;
+        int hl = getHL();
+        int temp = hl + val;
+        int flags = getF() & Z_FLAG;
         if ((temp & 0x10000) == 0x10000)
-            F |= C_FLAG;
-        F |= (H_FLAG & ((HL.getWord() ^ val.getWord() ^ (temp & 0xFFFF)) >> 7));
-        AF.setLowByte(F);
-        HL.setWord(temp);
+            flags |= C_FLAG;
+        flags |= (H_FLAG & ((hl ^ val ^ (temp & 0xFFFF)) >> 7));
+        setF(flags);
+        setHL(temp);
     }
 
     private int dec8bit(int val) {
 
-        val--;
+        int carry = getCarry();
 
-        int F = AF.getLowByte() & C_FLAG;
-        F |= N_FLAG;
-        if ((val & 0x0F) == 0xF)
-            F |= H_FLAG;
-        if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+        if (lazyFlags) {
 
-        return val;
+            deferFlags(FLAGS_DEC, val, 0, carry);
+        } else {
+
+            setF(decFlags(val, carry));
+        }
+
+        return (val - 1) & 0xFF;
     }
 
     private void cpA(int val) {
 
-        int temp = AF.getHighByte() - val;
+        if (lazyFlags) {
+
+            deferFlags(FLAGS_SUB, A, val, 0);
+        } else {
 
-        int F = N_FLAG;
-        F |= (H_FLAG & ((AF.getHighByte() ^ val ^ (temp & 0xFF)) << 1));
-        if (AF.getHighByte() < val)
-            F |= C_FLAG;
-        if (AF.getHighByte() == val)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            setF(subFlags(A, val, 0));
+        }
     }
 
     private int inc8bit(int val) {
 
-        val++;
+        int carry = getCarry();
 
-        int F = AF.getLowByte() & C_FLAG;
-        if ((val & 0xF) == 0x0)
-            F |= H_FLAG;
-        if ((val & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+        if (lazyFlags) {
 
-        return val;
+            deferFlags(FLAGS_INC, val, 0, carry);
+        } else {
+
+            setF(incFlags(val, carry));
+        }
+
+        return (val + 1) & 0xFF;
     }
 
     private void orA(int val) {
 
-        int temp = AF.getHighByte() | val;
+        A |= val;
 
-        int F = 0;
-        if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+        if (lazyFlags) {
+
+            deferFlags(FLAGS_OR, A, 0, 0);
+        } else {
 
-        AF.setHighByte(temp);
+            setF(logicFlags(A));
+        }
     }
 
     private void subA(int val) {
 
-        int temp = AF.getHighByte() - val;
+        if (lazyFlags) {
 
-        int F = N_FLAG;
-        F |= (H_FLAG & ((AF.getHighByte() ^ val ^ (temp & 0xFF)) << 1));
-        if (temp < 0)
-            F |= C_FLAG;
-        if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+            deferFlags(FLAGS_SUB, A, val, 0);
+        } else {
 
-        AF.setHighByte(temp);
+            setF(subFlags(A, val, 0));
+        }
+
+        A = (A - val) & 0xFF;
     }
 
     private void sbcA(int val) {
 
-        int carry = ((AF.getLowByte() & C_FLAG) >> 4);
-        int temp = AF.getHighByte() - val - carry;
+        int carry = getCarry() >> 4;
 
-        int F = N_FLAG;
-        F |= (H_FLAG & ((AF.getHighByte() ^ val ^ (temp & 0xFF)) << 1));
-        if (temp < 0)
-            F |= C_FLAG;
-        if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
+        if (lazyFlags) {
+
+            deferFlags(FLAGS_SUB, A, val, carry);
+        } else {
+
+            setF(subFlags(A, val, carry));
+        }
 
-        AF.setHighByte(temp);
+        A = (A - val - carry) & 0xFF;
     }
 
     private void xorA(int val) {
 
-        int temp = AF.getHighByte() ^ val;
+        A ^= val;
+
+        if (lazyFlags) {
+
+            deferFlags(FLAGS_OR, A, 0, 0);
+        } else {
+
+            setF(logicFlags(A));
+        }
+    }
+
+    /**
+     * Returns the flags register, first computing it from the last deferred
+     * ALU operation if lazy flags are enabled.
+     */
+    private int getF() {
+
+        if (flagOp != FLAGS_SET) {
 
-        int F = 0;
+            F = computeFlags();
+            flagOp = FLAGS_SET;
+        }
+
+        return F;
+    }
+
+    private void setF(int flags) {
+
+        F = flags;
+        flagOp = FLAGS_SET;
+    }
+
+    /**
+     * Returns just the C_FLAG bit, without materializing the rest of F.
+     */
+    private int getCarry() {
+
+        switch (flagOp) {
+        case FLAGS_ADD:
+            return ((flagA + flagVal + flagCarry) & 0x100) >> 4;
+        case FLAGS_SUB:
+            return (flagA - flagVal - flagCarry) < 0 ? C_FLAG : 0;
+        case FLAGS_AND:
+        case FLAGS_OR:
+            return 0;
+        case FLAGS_INC:
+        case FLAGS_DEC:
+            return flagCarry;
+        default:
+            return F & C_FLAG;
+        }
+    }
+
+    private void deferFlags(int op, int a, int val, int carry) {
+
+        flagOp = op;
+        flagA = a;
+        flagVal = val;
+        flagCarry = carry;
+    }
+
+    private int computeFlags() {
+
+        switch (flagOp) {
+        case FLAGS_ADD:
+            return addFlags(flagA, flagVal, flagCarry);
+        case FLAGS_SUB:
+            return subFlags(flagA, flagVal, flagCarry);
+        case FLAGS_AND:
+            return logicFlags(flagA) | H_FLAG;
+        case FLAGS_OR:
+            return logicFlags(flagA);
+        case FLAGS_INC:
+            return incFlags(flagA, flagCarry);
+        case FLAGS_DEC:
+            return decFlags(flagA, flagCarry);
+        default:
+            return F;
+        }
+    }
+
+    /*
+     * Flag formulas shared by the eager and lazy paths. CP uses subFlags, as
+     * comparing is a subtraction that throws away the result.
+     */
+
+    private static int addFlags(int a, int val, int carry) {
+
+        int temp = a + val + carry;
+
+        int flags = 0;
+        if ((((a & 0x0F) + (val & 0x0F) + carry) & 0x10) == 0x10)
+            flags |= H_FLAG;
+        if ((temp & 0x100) == 0x100)
+            flags |= C_FLAG;
+        if ((temp & 0xFF) == 0)
+            flags |= Z_FLAG;
+
+        return flags;
+    }
+
+    private static int subFlags(int a, int val, int carry) {
+
+        int temp = a - val - carry;
+
+        int flags = N_FLAG;
+        flags |= (H_FLAG & ((a ^ val ^ (temp & 0xFF)) << 1));
+        if (temp < 0)
+            flags |= C_FLAG;
         if ((temp & 0xFF) == 0)
-            F |= Z_FLAG;
-        AF.setLowByte(F);
-
-        AF.setHighByte(temp);
-    }
-
-    private final static int[] cycles = {
-            4, 12, 8, 8, 4, 4, 8, 4, 20, 8, 8, 8, 4, 4, 8, 4,
-            4, 12, 8, 8, 4, 4, 8, 4, 12, 8, 8, 8, 4, 4, 8, 4,
-            12, 12, 8, 8, 4, 4, 8, 4, 12, 8, 8, 8, 4, 4, 8, 4,
-            12, 12, 8, 8, 12, 12, 12, 4, 12, 8, 8, 8, 4, 4, 8, 4,
-
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-            8, 8, 8, 8, 8, 8, 4, 8, 4, 4, 4, 4, 4, 4, 8, 4,
-
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-            4, 4, 4, 4, 4, 4, 8, 4, 4, 4, 4, 4, 4, 4, 8, 4,
-
-            20, 12, 16, 16, 24, 16, 8, 16, 20, 16, 16, 0, 24, 24, 8, 16,
-            20, 12, 16, 0, 24, 16, 8, 16, 20, 16, 16, 0, 24, 0, 8, 16,
-            12, 12, 8, 0, 0, 16, 8, 16, 16, 4, 16, 0, 0, 0, 8, 16,
-            12, 12, 8, 4, 0, 16, 8, 16, 12, 8, 16, 4, 0, 0, 8, 16
-    };
-
-    private final static int[] cyclesCB = {
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-
-            8, 8, 8, 8, 8, 8, 12, 8, 8, 8, 8, 8, 8, 8, 12, 8,
-            8, 8, 8, 8, 8, 8, 12, 8, 8, 8, 8, 8, 8, 8, 12, 8,
-            8, 8, 8, 8, 8, 8, 12, 8, 8, 8, 8, 8, 8, 8, 12, 8,
-            8, 8, 8, 8, 8, 8, 12, 8, 8, 8, 8, 8, 8, 8, 12, 8,
-
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8,
-            8, 8, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 16, 8
-    };
+            flags |= Z_FLAG;
+
+        return flags;
+    }
+
+    private static int logicFlags(int result) {
+
+        return (result == 0) ? Z_FLAG : 0;
+    }
+
+    private static int incFlags(int val, int carry) {
+
+        val++;
+
+        int flags = carry;
+        if ((val & 0xF) == 0x0)
+            flags |= H_FLAG;
+        if ((val & 0xFF) == 0)
+            flags |= Z_FLAG;
+
+        return flags;
+    }
+
+    /**
+     * Returns flags << 8 | the adjusted A after DAA.
+     */
+    private static int daa(int a, int flags) {
+
+        int temp = a;
+
+        if ((flags & N_FLAG) == 0) {
+            if ((flags & H_FLAG) == H_FLAG || (temp & 0xF) > 9)
+                temp += 0x06;
+
+            if ((flags & C_FLAG) == C_FLAG || temp > 0x9F)
+                temp += 0x60;
+        } else {
+            if ((flags & H_FLAG) == H_FLAG)
+                temp = ((temp - 6) & 0xFF);
+
+            if ((flags & C_FLAG) == C_FLAG)
+                temp -= 0x60;
+        }
+
+        flags &= ~(H_FLAG | Z_FLAG);
+
+        if ((temp & 0x100) == 0x100)
+            flags |= C_FLAG;
+
+        temp &= 0xFF;
+
+        if (temp == 0)
+            flags |= Z_FLAG;
+
+        return (flags << 8) | temp;
+    }
+
+    private static int decFlags(int val, int carry) {
+
+        val--;
+
+        int flags = carry | N_FLAG;
+        if ((val & 0x0F) == 0xF)
+            flags |= H_FLAG;
+        if ((val & 0xFF) == 0)
+            flags |= Z_FLAG;
+
+        return flags;
+    }
 }
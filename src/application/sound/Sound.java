@@ -17,7 +17,7 @@ public class Sound {
     private static final int SAMPLE_RATE = 44100;
     private static final int SAMPLE_SIZE = 2;
 
-    private MemoryMap mmu = MemoryMap.getInstance();
+    private final MemoryMap mmu;
 
     private SourceDataLine line;
 
@@ -32,7 +32,32 @@ public class Sound {
     private WaveChannel channel3;
     private NoiseChannel channel4;
 
-    public Sound() throws LineUnavailableException {
+    /**
+     * Plays through the default audio line.
+     */
+    public Sound(MemoryMap mmu) throws LineUnavailableException {
+
+        this(mmu, openLine());
+    }
+
+    /**
+     * Plays through line, which must already be open. Lets several machines
+     * share a mixer or run without audio hardware.
+     */
+    public Sound(MemoryMap mmu, SourceDataLine line) {
+
+        this.mmu = mmu;
+        this.line = line;
+
+        soundBufferMix = new byte[line.getBufferSize()];
+
+        channel1 = new SquareWaveChannel();
+        channel2 = new SquareWaveChannel();
+        channel3 = new WaveChannel();
+        channel4 = new NoiseChannel();
+    }
+
+    private static SourceDataLine openLine() throws LineUnavailableException {
 
         AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, SAMPLE_RATE, 8, 2, 2, SAMPLE_RATE, true);
         DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
@@ -42,16 +67,11 @@ public class Sound {
             System.out.println("Line matching " + info + " is not supported.");
         }
 
-        line = (SourceDataLine) AudioSystem.getLine(info);
+        SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info);
 
         line.open(format);
 
-        soundBufferMix = new byte[line.getBufferSize()];
-
-        channel1 = new SquareWaveChannel();
-        channel2 = new SquareWaveChannel();
-        channel3 = new WaveChannel();
-        channel4 = new NoiseChannel();
+        return line;
     }
 
     public void startAudio() {
@@ -71,7 +91,7 @@ public class Sound {
         initChannels();
 
         soundTimer += cyclesRun;
-        if (soundTimer >= 93)
+        while (soundTimer >= 93)
         {
             soundTimer -= 93;
 
@@ -0,0 +1,138 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import application.Debugger;
+import application.MemoryMap;
+import application.Z80;
+
+/**
+ * Runs a short program storing to and loading from WRAM under watchpoints
+ * and breakpoints, checking what is reported and where the CPU pauses.
+ */
+public class DebuggerTest {
+
+    private static final int[] PROGRAM = {
+            0x3E, 0x42, // LD A,0x42
+            0xEA, 0x10, 0xC0, // LD (0xC010),A
+            0xFA, 0x10, 0xC0, // LD A,(0xC010)
+            0x00, // NOP
+            0x18, 0xFD // JR -3
+    };
+
+    private static final int[] POLL_LOOP = {
+            0xF0, 0x44, // LDH A,(0x44)
+            0xFE, 0x90, // CP 0x90
+            0x20, 0xFA // JR NZ,-6
+    };
+
+    private final List<String> hits = new ArrayList<>();
+
+    private MemoryMap mmu;
+    private Z80 z80;
+    private Debugger debugger;
+
+    @Test
+    public void reportsReadsAndWrites() throws IOException {
+
+        start(PROGRAM, false);
+        debugger.addWatchpoint(Debugger.READ | Debugger.WRITE, 0xC010, 0xC010, false);
+        debugger.addWatchpoint(Debugger.WRITE, 0xC011, 0xC0FF, false);
+
+        z80.run(100);
+
+        assertEquals(2, hits.size());
+        assertEquals("2 0152 C010 42", hits.get(0));
+        assertEquals("1 0155 C010 42", hits.get(1));
+        assertFalse(debugger.isPaused());
+
+        // Other addresses on a watched page read and write as usual
+        mmu.writeByte(0xC000, 0x99);
+        assertEquals(0x99, mmu.readByte(0xC000));
+        assertEquals(0x42, mmu.readByte(0xC010));
+        assertEquals(3, hits.size());
+
+        debugger.clearWatchpoints();
+        mmu.writeByte(0xC010, 0x11);
+        assertEquals(0x11, mmu.readByte(0xC010));
+        assertEquals(3, hits.size());
+    }
+
+    @Test
+    public void writePausesAfterTheInstruction() throws IOException {
+
+        start(PROGRAM, false);
+        debugger.addWatchpoint(Debugger.WRITE, 0xC010, 0xC010, true);
+
+        z80.run(1000);
+
+        assertTrue(debugger.isPaused());
+        assertEquals(0x0155, z80.getPC());
+        assertEquals(0x42, mmu.readByte(0xC010));
+    }
+
+    @Test
+    public void breakpointPausesBeforeTheInstruction() throws IOException {
+
+        start(PROGRAM, true);
+        debugger.addBreakpoint(0x0158, true);
+
+        z80.run(1000);
+
+        assertTrue(debugger.isPaused());
+        assertEquals(0x0158, z80.getPC());
+        assertEquals("4 0158 0158 00", hits.get(0));
+        assertEquals(0, z80.execute());
+
+        // Resuming runs the instruction it stopped at, then stops there again
+        // on the next pass of the loop
+        debugger.resume();
+        z80.run(1000);
+
+        assertTrue(debugger.isPaused());
+        assertEquals(0x0158, z80.getPC());
+        assertEquals(3, hits.size());
+    }
+
+    @Test
+    public void pollLoopProbeIsNotReported() throws IOException {
+
+        start(POLL_LOOP, false);
+        debugger.addWatchpoint(Debugger.READ, 0xFF44, 0xFF44, false);
+
+        // Stops at the loop start once the JR has been taken
+        z80.run(1000);
+        assertEquals(0x0150, z80.getPC());
+        assertEquals(1, hits.size());
+
+        assertEquals(32, z80.getPollLoopCycles());
+        assertEquals(1, hits.size());
+    }
+
+    private void start(int[] program, boolean blockCache) throws IOException {
+
+        mmu = TestRoms.load(TestRoms.create(program));
+        z80 = new Z80(mmu);
+        z80.setBlockCacheEnabled(blockCache);
+        z80.execute(); // NOP
+        z80.execute(); // JP 0x0150
+
+        debugger = new Debugger(mmu, z80);
+        debugger.setListener(new Debugger.Listener() {
+
+            @Override
+            public void hit(Debugger.Watchpoint watchpoint, int type, long cycle, int pc, int addr, int val) {
+
+                hits.add(String.format("%d %04X %04X %02X", type, pc, addr, val));
+            }
+        });
+    }
+}
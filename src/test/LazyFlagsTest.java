@@ -0,0 +1,167 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import application.MemoryMap;
+import application.Z80;
+
+/**
+ * Differential test for lazy flags: runs the same random mix of ALU, rotate,
+ * DAA and flag instructions with lazy flags off and on, pushing AF to the
+ * stack as it goes, and checks both runs leave identical stacks behind.
+ */
+public class LazyFlagsTest {
+
+    private static final int WRAM_START = 0xC000;
+    private static final int WRAM_END = 0xE000;
+    private static final int MAX_PUSHES = 3000;
+    private static final int CODE_END = 0x7E00;
+    private static final int INSTRUCTIONS = 40000;
+
+    private static final int[] ALU_IMMEDIATE = {
+            0xC6, 0xCE, 0xD6, 0xDE, 0xE6, 0xEE, 0xF6, 0xFE
+    };
+
+    // Single byte opcodes that only touch registers and flags
+    private static final int[] SINGLE = {
+            0x27, // DAA
+            0x2F, // CPL
+            0x37, // SCF
+            0x3F, // CCF
+            0x07, 0x0F, 0x17, 0x1F, // RLCA, RRCA, RLA, RRA
+            0x09, 0x19, 0x29, 0x39 // ADD HL,rr
+    };
+
+    private int pushes;
+
+    @Test
+    public void lazyFlagsMatchEagerFlags() throws IOException {
+
+        for (long seed = 1; seed <= 4; seed++) {
+
+            byte[] rom = createRom(seed);
+            int[] eager = run(rom, false);
+            int[] lazy = run(rom, true);
+
+            // The program ends by pushing a marker, check it got there
+            int marker = WRAM_END - WRAM_START - 2 * (pushes + 1);
+            assertEquals(0xEF, eager[marker]);
+            assertEquals(0xBE, eager[marker + 1]);
+
+            assertArrayEquals("seed " + seed, eager, lazy);
+        }
+    }
+
+    private int[] run(byte[] rom, boolean lazyFlags) throws IOException {
+
+        MemoryMap mmu = TestRoms.load(rom);
+
+        for (int addr = WRAM_START; addr < WRAM_END; addr++) {
+
+            mmu.writeByte(addr, 0);
+        }
+
+        Z80 z80 = new Z80(mmu);
+        z80.setLazyFlagsEnabled(lazyFlags);
+
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+
+            z80.execute();
+        }
+
+        int[] wram = new int[WRAM_END - WRAM_START];
+        for (int i = 0; i < wram.length; i++) {
+
+            wram[i] = mmu.readByte(WRAM_START + i);
+        }
+
+        return wram;
+    }
+
+    private byte[] createRom(long seed) {
+
+        Random random = new Random(seed);
+        byte[] data = TestRoms.create();
+
+        int pc = 0x150;
+        data[pc++] = (byte) 0xF3; // DI
+        data[pc++] = 0x31; // LD SP,0xE000
+        data[pc++] = 0x00;
+        data[pc++] = (byte) 0xE0;
+
+        pushes = 0;
+        while (pc < CODE_END && pushes < MAX_PUSHES) {
+
+            int reg = random.nextInt(8);
+            if (reg == 6) {
+
+                // Avoid (HL), HL points anywhere
+                reg = 7;
+            }
+
+            switch (random.nextInt(9)) {
+            case 0:
+                // LD r,n
+                data[pc++] = (byte) (0x06 | (reg << 3));
+                data[pc++] = (byte) random.nextInt(0x100);
+                break;
+            case 1:
+            case 2:
+                // ADD/ADC/SUB/SBC/AND/XOR/OR/CP A,r
+                data[pc++] = (byte) (0x80 | (random.nextInt(8) << 3) | reg);
+                break;
+            case 3:
+                data[pc++] = (byte) ALU_IMMEDIATE[random.nextInt(ALU_IMMEDIATE.length)];
+                data[pc++] = (byte) random.nextInt(0x100);
+                break;
+            case 4:
+                // INC r or DEC r
+                data[pc++] = (byte) (0x04 | (reg << 3) | random.nextInt(2));
+                break;
+            case 5:
+                data[pc++] = (byte) SINGLE[random.nextInt(SINGLE.length)];
+                break;
+            case 6:
+                // Rotates, shifts, SWAP and BIT
+                data[pc++] = (byte) 0xCB;
+                data[pc++] = (byte) ((random.nextInt(16) << 3) | reg);
+                break;
+            case 7:
+                // JR cc,+0 reads the flags without changing them
+                data[pc++] = (byte) (0x20 | (random.nextInt(4) << 3));
+                data[pc++] = 0x00;
+                break;
+            case 8:
+                // LD BC,nn; PUSH BC; POP AF loads arbitrary flags
+                data[pc++] = 0x01;
+                data[pc++] = (byte) random.nextInt(0x100);
+                data[pc++] = (byte) random.nextInt(0x100);
+                data[pc++] = (byte) 0xC5;
+                data[pc++] = (byte) 0xF1;
+                break;
+            }
+
+            if (random.nextInt(3) == 0) {
+
+                data[pc++] = (byte) 0xF5; // PUSH AF
+                pushes++;
+            }
+        }
+
+        data[pc++] = 0x01; // LD BC,0xBEEF; PUSH BC
+        data[pc++] = (byte) 0xEF;
+        data[pc++] = (byte) 0xBE;
+        data[pc++] = (byte) 0xC5;
+
+        data[pc++] = 0x18; // JR -2
+        data[pc++] = (byte) 0xFE;
+
+        return data;
+    }
+}
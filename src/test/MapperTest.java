@@ -0,0 +1,140 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import application.MemoryMap;
+
+/**
+ * Drives each bank controller through the memory map, on ROMs whose banks
+ * start with their own bank number.
+ */
+public class MapperTest {
+
+    @Test
+    public void mbc1() throws IOException {
+
+        // 1MB, 32KB RAM
+        MemoryMap mmu = createMemoryMap(0x02, 0x05, 0x03);
+
+        assertEquals(1, mmu.readByte(0x4000));
+        mmu.writeByte(0x2000, 0x00);
+        assertEquals(1, mmu.readByte(0x4000));
+        mmu.writeByte(0x2000, 0x1F);
+        mmu.writeByte(0x4000, 0x01);
+        assertEquals(0x3F, mmu.readByte(0x4000));
+
+        // Bank 0x20 reads as 0x21, and bit 6 is past the end of the ROM
+        mmu.writeByte(0x2000, 0x00);
+        mmu.writeByte(0x4000, 0x03);
+        assertEquals(0x21, mmu.readByte(0x4000));
+
+        // Mode 1 moves the high bits to 0x0000-0x3FFF and the RAM bank
+        mmu.writeByte(0x0000, 0x0A);
+        mmu.writeByte(0xA000, 0x55);
+        mmu.writeByte(0x4000, 0x01);
+        mmu.writeByte(0x6000, 0x01);
+        assertEquals(0x20, mmu.readByte(0x0000));
+        assertEquals(1, mmu.getCart().getCurrRamBank());
+        mmu.writeByte(0xA000, 0x66);
+
+        mmu.writeByte(0x6000, 0x00);
+        assertEquals(0, mmu.readByte(0x0000));
+        assertEquals(0x55, mmu.readByte(0xA000));
+
+        mmu.writeByte(0x0000, 0x00);
+        assertEquals(0xFF, mmu.readByte(0xA000));
+    }
+
+    @Test
+    public void mbc2() throws IOException {
+
+        // 128KB
+        MemoryMap mmu = createMemoryMap(0x05, 0x02, 0x00);
+
+        // Bit 8 clear is RAM enable, set is the ROM bank
+        mmu.writeByte(0x2000, 0x05);
+        assertEquals(1, mmu.readByte(0x4000));
+        mmu.writeByte(0x2100, 0x05);
+        assertEquals(5, mmu.readByte(0x4000));
+        mmu.writeByte(0x0100, 0x00);
+        assertEquals(1, mmu.readByte(0x4000));
+
+        mmu.writeByte(0x0000, 0x0A);
+        mmu.writeByte(0xA001, 0xAB);
+        assertEquals(0xFB, mmu.readByte(0xA001));
+        assertEquals(0xFB, mmu.readByte(0xA201));
+
+        mmu.writeByte(0x0000, 0x00);
+        assertEquals(0xFF, mmu.readByte(0xA001));
+    }
+
+    @Test
+    public void mbc3Clock() throws IOException {
+
+        // 128KB, 32KB RAM
+        MemoryMap mmu = createMemoryMap(0x12, 0x02, 0x03);
+
+        mmu.writeByte(0x2000, 0x00);
+        assertEquals(1, mmu.readByte(0x4000));
+        mmu.writeByte(0x2000, 0x07);
+        assertEquals(7, mmu.readByte(0x4000));
+
+        mmu.writeByte(0x0000, 0x0A);
+        mmu.writeByte(0x4000, 0x08);
+        mmu.writeByte(0xA000, 25);
+        assertEquals(25, mmu.readByte(0xA000));
+
+        mmu.writeByte(0x4000, 0x0C);
+        mmu.writeByte(0xA000, 0xC1);
+        assertEquals(0xC1, mmu.readByte(0xA000));
+
+        mmu.writeByte(0x4000, 0x02);
+        mmu.writeByte(0xA000, 0x12);
+        assertEquals(0x12, mmu.readByte(0xA000));
+    }
+
+    @Test
+    public void mbc5() throws IOException {
+
+        // Rumble, 4MB, 32KB RAM
+        MemoryMap mmu = createMemoryMap(0x1D, 0x07, 0x03);
+
+        mmu.writeByte(0x2000, 0x00);
+        assertEquals(0, mmu.readByte(0x4000));
+        mmu.writeByte(0x2000, 0xFF);
+        assertEquals(0xFF, mmu.readByte(0x4000));
+
+        // Bit 8 is past the end of a 4MB ROM
+        mmu.writeByte(0x3000, 0x01);
+        mmu.writeByte(0x2000, 0x02);
+        assertEquals(2, mmu.getCart().getCurrRomBank());
+
+        mmu.writeByte(0x4000, 0x0B);
+        assertTrue(mmu.getCart().isRumbleOn());
+        assertEquals(3, mmu.getCart().getCurrRamBank());
+        mmu.writeByte(0x4000, 0x03);
+        assertFalse(mmu.getCart().isRumbleOn());
+    }
+
+    private static MemoryMap createMemoryMap(int type, int size, int ramSize) throws IOException {
+
+        int banks = 2 << size;
+        byte[] data = new byte[banks * 0x4000];
+        for (int bank = 0; bank < banks; bank++) {
+
+            data[bank * 0x4000] = (byte) bank;
+        }
+
+        data[0x147] = (byte) type;
+        data[0x148] = (byte) size;
+        data[0x149] = (byte) ramSize;
+
+        return TestRoms.load(data);
+    }
+}
@@ -0,0 +1,235 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.SourceDataLine;
+
+import org.junit.Test;
+
+import application.Gameboy;
+import application.MemoryMap;
+import application.Z80;
+import application.sound.Sound;
+
+/**
+ * Runs several complete machines at once, one per thread, each playing its
+ * own tone and filling VRAM and WRAM with its own arithmetic sequence.
+ * Checks every machine ends up with the same screen, memory and audio as
+ * when it runs alone, and that the machines differ from each other.
+ */
+public class MultiMachineTest {
+
+    private static final int MACHINES = 4;
+    private static final int FILL_START = 0x8000;
+    private static final int WRAM_START = 0xC000;
+    private static final int WRAM_END = 0xE000;
+    private static final int FRAMES = 30;
+
+    @Test
+    public void machinesDoNotShareState() throws Exception {
+
+        List<byte[]> roms = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(MACHINES);
+        try {
+
+            for (int i = 0; i < MACHINES; i++) {
+
+                roms.add(createRom(i));
+            }
+
+            // Frames are run in step, so the machines interleave even on a
+            // single core
+            final CyclicBarrier frameBarrier = new CyclicBarrier(MACHINES);
+
+            List<Future<Result>> results = new ArrayList<>();
+            for (final byte[] rom : roms) {
+
+                results.add(executor.submit(new Callable<Result>() {
+
+                    @Override
+                    public Result call() throws Exception {
+
+                        return run(rom, frameBarrier);
+                    }
+                }));
+            }
+
+            Result[] together = new Result[MACHINES];
+            for (int i = 0; i < MACHINES; i++) {
+
+                together[i] = results.get(i).get();
+            }
+
+            for (int i = 0; i < MACHINES; i++) {
+
+                Result alone = run(roms.get(i), null);
+                assertArrayEquals("screen of machine " + i, alone.screen, together[i].screen);
+                assertArrayEquals("memory of machine " + i, alone.wram, together[i].wram);
+                assertEquals("audio of machine " + i, alone.audioHash, together[i].audioHash);
+                assertEquals("audio of machine " + i, alone.audioBytes, together[i].audioBytes);
+
+                for (int j = 0; j < together[i].wram.length; j++) {
+
+                    int index = WRAM_START - FILL_START + j;
+                    assertEquals("machine " + i + ", offset " + j, (start(i) + index * step(i)) & 0xFF,
+                            together[i].wram[j]);
+                }
+
+                for (int j = 0; j < i; j++) {
+
+                    assertFalse(Arrays.equals(together[i].screen, together[j].screen));
+                    assertFalse(together[i].audioHash == together[j].audioHash);
+                }
+            }
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    private static Result run(byte[] rom, CyclicBarrier frameBarrier) throws Exception {
+
+        MemoryMap mmu = TestRoms.load(rom);
+
+        StubLine line = new StubLine();
+        Gameboy gameboy = new Gameboy(mmu, new Z80(mmu), new Sound(mmu, line.create()));
+        gameboy.powerUp();
+
+        for (int i = 0; i < FRAMES; i++) {
+
+            gameboy.executeOneFrame();
+            if (frameBarrier != null) {
+
+                frameBarrier.await();
+            }
+        }
+
+        Result result = new Result();
+        result.screen = new int[Gameboy.SCREEN_WIDTH * Gameboy.SCREEN_HEIGHT];
+        for (int y = 0; y < Gameboy.SCREEN_HEIGHT; y++) {
+
+            for (int x = 0; x < Gameboy.SCREEN_WIDTH; x++) {
+
+                result.screen[y * Gameboy.SCREEN_WIDTH + x] = gameboy.getScreen(x, y);
+            }
+        }
+
+        result.wram = new int[WRAM_END - WRAM_START];
+        for (int i = 0; i < result.wram.length; i++) {
+
+            result.wram[i] = mmu.readByte(WRAM_START + i);
+        }
+
+        result.audioHash = line.hash;
+        result.audioBytes = line.bytes;
+
+        return result;
+    }
+
+    private static int start(int machine) {
+
+        return 0x11 * machine;
+    }
+
+    private static int step(int machine) {
+
+        return 2 * machine + 1;
+    }
+
+    private static byte[] createRom(int machine) {
+
+        int[] program = {
+                0xF3, // DI
+                0x3E, 0xF0, 0xE0, 0x12, // LD A,0xF0; LDH (NR12),A
+                0x3E, 0x80, 0xE0, 0x11, // LD A,0x80; LDH (NR11),A
+                0x3E, 0x20 + 0x30 * machine, 0xE0, 0x13, // LD A,tone; LDH (NR13),A
+                0x3E, 0x87, 0xE0, 0x14, // LD A,0x87; LDH (NR14),A
+                0x21, 0x00, 0x80, // LD HL,0x8000
+                0x3E, start(machine), // LD A,start
+                0x22, // LDI (HL),A
+                0xC6, step(machine), // ADD A,step
+                0x47, 0x7C, // LD B,A; LD A,H
+                0xFE, 0xE0, 0x78, // CP 0xE0; LD A,B
+                0x20, 0xF6, // JR NZ,-10
+                0x18, 0xFE // JR -2
+        };
+
+        return TestRoms.create(program);
+    }
+
+    private static class Result {
+
+        int[] screen;
+        int[] wram;
+        long audioHash;
+        long audioBytes;
+    }
+
+    /**
+     * Stands in for an open audio line that always has room, keeping a hash
+     * of everything written to it.
+     */
+    private static class StubLine implements InvocationHandler {
+
+        long hash = 1;
+        long bytes;
+
+        SourceDataLine create() {
+
+            return (SourceDataLine) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { SourceDataLine.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+
+            switch (method.getName()) {
+            case "getBufferSize":
+                return 1500;
+            case "available":
+                return 750;
+            case "write":
+                byte[] buffer = (byte[]) args[0];
+                int offset = (Integer) args[1];
+                int length = (Integer) args[2];
+                for (int i = offset; i < offset + length; i++) {
+
+                    hash = 31 * hash + buffer[i];
+                }
+                bytes += length;
+                return length;
+            }
+
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) {
+
+                return false;
+            } else if (type == int.class) {
+
+                return 0;
+            } else if (type == long.class) {
+
+                return 0L;
+            } else if (type == float.class) {
+
+                return 0f;
+            }
+
+            return null;
+        }
+    }
+}
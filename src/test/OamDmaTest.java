@@ -0,0 +1,109 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static test.TestRoms.pattern;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import application.MemoryMap;
+import application.Sprite;
+import application.Z80;
+
+/**
+ * Checks OAM DMA from WRAM copies all 160 bytes and decodes the sprites, and
+ * that the timed mode copies one byte per M-cycle while blocking everything
+ * but I/O and HRAM.
+ */
+public class OamDmaTest {
+
+    private static final int[] START_TRANSFER = {
+            0x3E, 0xC1, // LD A,0xC1
+            0xE0, 0x46, // LDH (0x46),A
+            0x00, 0x00 // NOP; NOP
+    };
+
+    @Test
+    public void copiesAtOnce() throws IOException {
+
+        MemoryMap mmu = createMemoryMap();
+        mmu.writeByte(0xFF46, 0xC1);
+
+        for (int i = 0; i < 0xA0; i++) {
+
+            assertEquals(pattern(i), mmu.readByte(0xFE00 + i));
+        }
+
+        Sprite sprite = mmu.getSprites()[5];
+        assertEquals(pattern(20), sprite.getY());
+        assertEquals(pattern(21), sprite.getX());
+        assertEquals(pattern(22), sprite.getTileNum());
+        assertEquals(pattern(23), sprite.getAttributeFlags());
+    }
+
+    @Test
+    public void timedTransferBlocksMemory() throws IOException {
+
+        MemoryMap mmu = createMemoryMap();
+        mmu.setTimedOamDmaEnabled(true);
+        mmu.writeByte(0xFF80, 0x12);
+        mmu.writeByte(0xFF46, 0xC1);
+
+        assertEquals(640, mmu.getCyclesToOamDmaEnd());
+        assertEquals(0xFF, mmu.readByte(0xC100));
+        assertEquals(0xFF, mmu.readByte(0x0000));
+        assertEquals(0x12, mmu.readByte(0xFF80));
+
+        mmu.writeByte(0xC100, 0x00);
+        mmu.updateOamDma(4 * 80);
+
+        assertEquals(pattern(79), mmu.getSprites()[19].getAttributeFlags());
+        assertEquals(0, mmu.getSprites()[20].getY());
+
+        mmu.updateOamDma(4 * 80);
+
+        assertEquals(Integer.MAX_VALUE, mmu.getCyclesToOamDmaEnd());
+        assertEquals(pattern(0), mmu.readByte(0xC100));
+        for (int i = 0; i < 0xA0; i++) {
+
+            assertEquals(pattern(i), mmu.readByte(0xFE00 + i));
+        }
+    }
+
+    @Test
+    public void timedTransferBlocksCodeInBlockCache() throws IOException {
+
+        // ROM reads 0xFF once the transfer starts, which runs as RST 0x38
+        assertEquals(0x0038, runPastTransferStart(false));
+        assertEquals(0x0038, runPastTransferStart(true));
+    }
+
+    private static int runPastTransferStart(boolean blockCache) throws IOException {
+
+        MemoryMap mmu = createMemoryMap(START_TRANSFER);
+        mmu.setTimedOamDmaEnabled(true);
+
+        Z80 z80 = new Z80(mmu);
+        z80.setBlockCacheEnabled(blockCache);
+
+        // NOP; JP 0x0150; LD A,0xC1; LDH (0x46),A then the next fetch
+        for (int i = 0; i < 5; i++) {
+
+            z80.execute();
+        }
+
+        return z80.getPC();
+    }
+
+    private static MemoryMap createMemoryMap(int... program) throws IOException {
+
+        MemoryMap mmu = TestRoms.load(TestRoms.create(program));
+        for (int i = 0; i < 0xA0; i++) {
+
+            mmu.writeByte(0xC100 + i, pattern(i));
+        }
+
+        return mmu;
+    }
+}
@@ -0,0 +1,90 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import application.Profiler;
+import application.Z80;
+
+/**
+ * Runs a loop with nested calls and a routine that drops its own return
+ * address, and checks the cycles charged to each call stack.
+ */
+public class ProfilerTest {
+
+    private static final int[] PROGRAM = {
+            0xF3, // 0x150: DI
+            0x31, 0xFE, 0xFF, // 0x151: LD SP,0xFFFE
+            0xCD, 0x00, 0x20, // 0x154: CALL 0x2000
+            0xCD, 0x10, 0x20, // 0x157: CALL 0x2010
+            0x18, 0xF8 // 0x15A: JR 0x154
+    };
+
+    private static final int[] OUTER = {
+            0x00, // 0x2000: NOP
+            0xCD, 0x08, 0x20, // 0x2001: CALL 0x2008
+            0xC9 // 0x2004: RET
+    };
+
+    private static final int[] INNER = {
+            0x00, 0x00, // 0x2008: NOP; NOP
+            0xC9 // 0x200A: RET
+    };
+
+    // Pops its own return address and jumps back instead of returning
+    private static final int[] DROP = {
+            0xE1, // 0x2010: POP HL
+            0xC3, 0x5A, 0x01 // 0x2011: JP 0x015A
+    };
+
+    private static final int PASSES = 10;
+    private static final int INSTRUCTIONS_PER_PASS = 11;
+
+    @Test
+    public void chargesCyclesToCallStacks() throws IOException {
+
+        Z80 z80 = new Z80(TestRoms.load(createRom()));
+        z80.setProfilingEnabled(true);
+
+        // NOP; JP 0x0150; DI; LD SP,0xFFFE then the loop
+        for (int i = 0; i < 4 + PASSES * INSTRUCTIONS_PER_PASS; i++) {
+
+            z80.execute();
+        }
+
+        Profiler profiler = z80.getProfiler();
+
+        // The setup, both CALLs, then JP and JR once the return address is dropped
+        assertEquals("main " + (36 + PASSES * (24 + 24 + 16 + 12)) + "\n"
+                + "main;00:2000 " + PASSES * (4 + 24 + 16) + "\n"
+                + "main;00:2000;00:2008 " + PASSES * (4 + 4 + 16) + "\n"
+                + "main;00:2010 " + PASSES * 12 + "\n",
+                profiler.getCollapsedStacks());
+
+        String report = profiler.getHotspotReport(3);
+        assertTrue(report, report.contains("00:0154              10              240"));
+        assertEquals(4, report.split("\n").length);
+    }
+
+    private byte[] createRom() {
+
+        byte[] data = TestRoms.create(PROGRAM);
+        copy(data, 0x2000, OUTER);
+        copy(data, 0x2008, INNER);
+        copy(data, 0x2010, DROP);
+
+        return data;
+    }
+
+    private void copy(byte[] data, int addr, int[] code) {
+
+        for (int i = 0; i < code.length; i++) {
+
+            data[addr + i] = (byte) code[i];
+        }
+    }
+}
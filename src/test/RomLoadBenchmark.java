@@ -0,0 +1,112 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+
+import application.Cartridge;
+
+import com.google.common.io.Files;
+
+/**
+ * Measures how long loading a ROM takes with Cartridge.loadRom, which maps
+ * the file and copies banks only when they are first used, against reading
+ * the whole file and copying every bank up front as loadRom used to.
+ * 
+ * The cold figure is the first load of the ROM, once both paths have loaded
+ * their classes on a small ROM, and the warm figure the average of the
+ * loads after it. The OS page cache is not dropped, so for a cold disk run
+ * it on a file that has not been read recently.
+ * 
+ * Run with: java -cp bin:lib/* test.RomLoadBenchmark [rom] [loads]
+ * 
+ * Without a ROM a blank 4MB MBC5 image is used.
+ */
+public class RomLoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+
+        File rom = args.length > 0 ? new File(args[0]) : createRom(0x07);
+        int loads = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        File small = createRom(0x00);
+        new Cartridge().loadRom(small);
+        loadCopied(small);
+        small.delete();
+
+        try {
+
+            System.out.printf("mapped: %s%n", measure(rom, loads, true));
+            System.out.printf("copied: %s%n", measure(rom, loads, false));
+        } finally {
+
+            if (args.length == 0) {
+
+                rom.delete();
+            }
+        }
+    }
+
+    private static String measure(File rom, int loads, boolean mapped) throws IOException {
+
+        long cold = 0;
+        long warm = 0;
+
+        for (int i = 0; i < loads; i++) {
+
+            long start = System.nanoTime();
+            if (mapped) {
+
+                new Cartridge().loadRom(rom);
+            } else {
+
+                loadCopied(rom);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (i == 0) {
+
+                cold = elapsed;
+            } else {
+
+                warm += elapsed;
+            }
+        }
+
+        return String.format("cold %.2f ms, warm %.3f ms", cold / 1e6, warm / 1e6 / (loads - 1));
+    }
+
+    /*
+     * The previous loading path: read the file, then copy all banks.
+     */
+    private static byte[][] loadCopied(File rom) throws IOException {
+
+        byte[] data = Files.toByteArray(rom);
+
+        byte[][] banks = new byte[data.length / 0x4000][0x4000];
+        for (int b = 0; b < banks.length; b++) {
+
+            System.arraycopy(data, 0x4000 * b, banks[b], 0, 0x4000);
+        }
+
+        return banks;
+    }
+
+    private static File createRom(int size) throws IOException {
+
+        byte[] data = new byte[0x8000 << size];
+
+        // NOP; JP 0x0150
+        data[0x101] = (byte) 0xC3;
+        data[0x102] = 0x50;
+        data[0x103] = 0x01;
+
+        data[0x147] = 0x19; // MBC5
+        data[0x148] = (byte) size;
+        data[0x149] = 0x00;
+
+        File rom = File.createTempFile("romload", ".gb");
+        Files.write(data, rom);
+
+        return rom;
+    }
+}
@@ -0,0 +1,69 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+
+import application.Cartridge;
+import application.MemoryMap;
+
+import com.google.common.io.Files;
+
+/**
+ * Builds ROM images for the tests and loads them into a fresh memory map.
+ */
+final class TestRoms {
+
+    private TestRoms() {
+    }
+
+    /**
+     * Returns a 32KB ROM only image that runs NOP; JP 0x0150 from the entry
+     * point, with program copied to 0x150.
+     */
+    static byte[] create(int... program) {
+
+        byte[] data = new byte[0x8000];
+
+        // NOP; JP 0x0150
+        data[0x101] = (byte) 0xC3;
+        data[0x102] = 0x50;
+        data[0x103] = 0x01;
+
+        for (int i = 0; i < program.length; i++) {
+
+            data[0x150 + i] = (byte) program[i];
+        }
+
+        return data;
+    }
+
+    /**
+     * Returns a new memory map with data loaded as its cartridge ROM, powered
+     * up.
+     */
+    static MemoryMap load(byte[] data) throws IOException {
+
+        File rom = File.createTempFile("test", ".gb");
+        try {
+
+            Files.write(data, rom);
+
+            MemoryMap mmu = new MemoryMap(new Cartridge());
+            mmu.getCart().loadRom(rom);
+            mmu.powerUp();
+
+            return mmu;
+        } finally {
+
+            rom.delete();
+        }
+    }
+
+    /**
+     * Returns byte i of the data the DMA tests copy around.
+     */
+    static int pattern(int i) {
+
+        return (i * 37 + 11) & 0xFF;
+    }
+}
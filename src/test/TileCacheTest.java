@@ -0,0 +1,81 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import application.MemoryMap;
+import application.TileCache;
+
+/**
+ * Checks tiles are decoded with the right color numbers and flipped copy,
+ * and decoded again after CPU writes and VRAM DMA change their data.
+ */
+public class TileCacheTest {
+
+    @Test
+    public void decodesAndFlips() throws IOException {
+
+        MemoryMap mmu = createMemoryMap();
+        TileCache tiles = mmu.getTileCache();
+
+        // Row 2 of tile 1: colors 0, 1, 2, 3, 3, 2, 1, 0
+        mmu.writeByte(0x8014, 0x5A);
+        mmu.writeByte(0x8015, 0x3C);
+
+        byte[] tile = tiles.getTile(0, 1);
+        byte[] flipped = tiles.getFlippedTile(0, 1);
+        int[] expected = { 0, 1, 2, 3, 3, 2, 1, 0 };
+        for (int x = 0; x < 8; x++) {
+
+            assertEquals(expected[x], tile[16 + x]);
+            assertEquals(expected[x], flipped[16 + 7 - x]);
+        }
+
+        // Now 1, 1, 3, 3, 3, 3, 1, 1
+        mmu.writeByte(0x8014, 0xFF);
+        assertEquals(1, tiles.getTile(0, 1)[16]);
+        assertEquals(3, tiles.getTile(0, 1)[16 + 2]);
+        assertEquals(3, tiles.getFlippedTile(0, 1)[16 + 5]);
+
+        // The last tile, at 0x97F0, and the tile maps after it
+        mmu.writeByte(0x97FF, 0x80);
+        mmu.writeByte(0x9800, 0xFF);
+        assertEquals(2, tiles.getTile(0, TileCache.TILES_PER_BANK - 1)[56]);
+    }
+
+    @Test
+    public void vramDmaInvalidates() throws IOException {
+
+        MemoryMap mmu = createMemoryMap();
+        TileCache tiles = mmu.getTileCache();
+        assertEquals(0, tiles.getTile(1, 2)[0]);
+
+        for (int i = 0; i < 0x20; i++) {
+
+            mmu.writeByte(0xC000 + i, 0xFF);
+        }
+
+        mmu.writeByte(0xFF4F, 0x01);
+        mmu.writeByte(0xFF51, 0xC0);
+        mmu.writeByte(0xFF52, 0x00);
+        mmu.writeByte(0xFF53, 0x80);
+        mmu.writeByte(0xFF54, 0x20);
+        mmu.writeByte(0xFF55, 0x01);
+
+        assertEquals(3, tiles.getTile(1, 2)[0]);
+        assertEquals(3, tiles.getTile(1, 3)[63]);
+        assertEquals(0, tiles.getTile(0, 2)[0]);
+        assertEquals(0, tiles.getTile(1, 4)[0]);
+    }
+
+    private static MemoryMap createMemoryMap() throws IOException {
+
+        byte[] data = TestRoms.create();
+        data[0x143] = (byte) 0x80; // CGB
+
+        return TestRoms.load(data);
+    }
+}
@@ -0,0 +1,59 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import application.TraceDecoder;
+import application.Z80;
+
+/**
+ * Runs past the end of the trace buffer, dumps it and checks the decoded
+ * text holds the most recent instructions, oldest first.
+ */
+public class TraceBufferTest {
+
+    private static final int[] PROGRAM = {
+            0x31, 0xFE, 0xFF, // 0x150: LD SP,0xFFFE
+            0x3C, // 0x153: INC A
+            0x18, 0xFD // 0x154: JR 0x153
+    };
+
+    @Test
+    public void dumpsMostRecentInstructions() throws IOException {
+
+        File dump = File.createTempFile("trace", ".bin");
+        try {
+
+            Z80 z80 = new Z80(TestRoms.load(TestRoms.create(PROGRAM)));
+            z80.setTraceEnabled(true);
+
+            int capacity = z80.getTrace().getCapacity();
+            int instructions = capacity + 1002;
+
+            for (int i = 0; i < instructions; i++) {
+
+                z80.execute();
+            }
+
+            z80.getTrace().dump(dump);
+            String[] lines = TraceDecoder.decode(dump).split("\n");
+
+            assertEquals(capacity + 1, lines.length);
+
+            // NOP; JP 0x0150; LD SP,0xFFFE, pairs of INC A; JR then the last INC A
+            int pairs = (instructions - 3) / 2;
+            long cycles = 4 + 16 + 12 + pairs * (4 + 12);
+            int a = (0x01 + pairs) & 0xFF;
+            String last = lines[lines.length - 1];
+            assertEquals(String.format("%14d 00:0153 3C  %02X", cycles, a), last.substring(0, 29));
+            assertEquals("0013 00D8 014D FFFE", last.substring(last.length() - 19));
+        } finally {
+
+            dump.delete();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import static test.TestRoms.pattern;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import application.MemoryMap;
+
+/**
+ * Checks CGB VRAM DMA: a general purpose transfer copies everything at once
+ * and reports its stall, an HBlank transfer copies one 16 byte block per
+ * call until HDMA5 wraps to 0xFF.
+ */
+public class VramDmaTest {
+
+    @Test
+    public void generalTransferCopiesAtOnce() throws IOException {
+
+        MemoryMap mmu = createMemoryMap();
+        startTransfer(mmu, 0xC000, 0x8100, 0x03);
+
+        for (int i = 0; i < 0x40; i++) {
+
+            assertEquals(pattern(i), mmu.readByte(0x8100 + i));
+        }
+        assertEquals(0, mmu.readByte(0x8140));
+        assertEquals(0xFF, mmu.readByte(0xFF55));
+        assertEquals(4 * 32, mmu.takeDmaStallCycles());
+        assertEquals(0, mmu.takeDmaStallCycles());
+    }
+
+    @Test
+    public void hblankTransferCopiesOneBlockAtATime() throws IOException {
+
+        MemoryMap mmu = createMemoryMap();
+        startTransfer(mmu, 0xC000, 0x9FE0, 0x82);
+
+        assertEquals(32, mmu.handleDmaTransfer());
+        assertEquals(pattern(0x0F), mmu.readByte(0x9FEF));
+        assertEquals(0, mmu.readByte(0x9FF0));
+        assertEquals(0x01, mmu.readByte(0xFF55));
+
+        assertEquals(32, mmu.handleDmaTransfer());
+        assertEquals(32, mmu.handleDmaTransfer());
+        assertEquals(0xFF, mmu.readByte(0xFF55));
+        assertEquals(0, mmu.handleDmaTransfer());
+
+        // The destination wraps to the start of VRAM
+        assertEquals(pattern(0x1F), mmu.readByte(0x9FFF));
+        assertEquals(pattern(0x20), mmu.readByte(0x8000));
+        assertEquals(0, mmu.takeDmaStallCycles());
+    }
+
+    private static void startTransfer(MemoryMap mmu, int source, int dest, int hdma5) {
+
+        mmu.writeByte(0xFF51, source >> 8);
+        mmu.writeByte(0xFF52, source & 0xFF);
+        mmu.writeByte(0xFF53, dest >> 8);
+        mmu.writeByte(0xFF54, dest & 0xFF);
+        mmu.writeByte(0xFF55, hdma5);
+    }
+
+    private static MemoryMap createMemoryMap() throws IOException {
+
+        byte[] data = TestRoms.create();
+        data[0x143] = (byte) 0x80; // CGB
+
+        MemoryMap mmu = TestRoms.load(data);
+        for (int i = 0; i < 0x100; i++) {
+
+            mmu.writeByte(0xC000 + i, pattern(i));
+        }
+
+        return mmu;
+    }
+}
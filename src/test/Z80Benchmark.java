@@ -0,0 +1,146 @@
+package test;
+
+import java.io.IOException;
+
+import application.MemoryMap;
+import application.Z80;
+
+/**
+ * Measures raw interpreter throughput by running a synthetic ROM through
+ * {@link Z80#run(int)} without any of the timer, LCD or sound updates.
+ * Reports emulated cycles per second in MHz; real hardware runs at 4.19 MHz.
+ * 
+ * Run with: java -cp bin:lib/* test.Z80Benchmark [rounds] [blocks] [lazy] [profile]
+ * 
+ * Passing "blocks" enables the ROM block cache and instruction fusion,
+ * "lazy" enables lazy flags and "profile" prints the hottest addresses and
+ * the collapsed call stacks at the end.
+ */
+public class Z80Benchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int CYCLES_PER_ROUND = 100000000;
+
+    /*
+     * Main loop at 0x150: an ALU/CB mix over WRAM followed by a short memcpy
+     * and a CALL/RET, then jump back. Interrupts stay disabled.
+     */
+    private static final int[] PROGRAM = {
+            0xF3, // DI
+            0x31, 0xFE, 0xFF, // LD SP,0xFFFE
+            0x21, 0x00, 0xC0, // LD HL,0xC000
+            0x06, 0x13, // LD B,0x13
+            0x0E, 0x37, // LD C,0x37
+            0x16, 0x20, // LD D,0x20
+            0x78, 0x81, 0x22, // loop: LD A,B; ADD A,C; LDI (HL),A
+            0xCE, 0x99, 0x27, 0x22, // ADC A,0x99; DAA; LDI (HL),A
+            0x90, 0xDE, 0x11, 0x27, // SUB B; SBC A,0x11; DAA
+            0xF5, 0xC1, 0x79, 0x22, // PUSH AF; POP BC; LD A,C; LDI (HL),A
+            0xFE, 0x50, 0x38, 0x01, 0x0C, // CP 0x50; JR C,+1; INC C
+            0xE6, 0xF0, 0xB3, 0xA9, 0x22, // AND 0xF0; OR E; XOR C; LDI (HL),A
+            0xCB, 0x07, 0xCB, 0x37, 0xCB, 0x38, 0xCB, 0x5F, // RLC A; SWAP A; SRL B; BIT 3,A
+            0xCB, 0x89, 0xCB, 0xF3, 0xCB, 0x16, 0xCB, 0x19, // RES 1,C; SET 6,E; RL (HL); RR C
+            0x3C, 0x1D, // INC A; DEC E
+            0xE5, 0x09, 0x7C, 0xAD, 0xE1, 0x22, // PUSH HL; ADD HL,BC; LD A,H; XOR L; POP HL; LDI (HL),A
+            0x15, 0x20, 0x00, // DEC D; JR NZ,loop, see createRom
+            0x21, 0x00, 0x40, // LD HL,0x4000
+            0x11, 0x00, 0xC8, // LD DE,0xC800
+            0x06, 0x40, // LD B,0x40
+            0xCD, 0x00, 0x30, // CALL 0x3000
+            0xC3, 0x54, 0x01 // JP 0x0154
+    };
+
+    /*
+     * Offsets in PROGRAM of the loop label and of the JR NZ displacement
+     * back to it. createRom works out the displacement from these, since a
+     * hand-counted one that lands mid-instruction runs garbage instead.
+     */
+    private static final int LOOP_START = 13;
+    private static final int LOOP_BRANCH = 64;
+
+    // memcpy B bytes from HL to DE
+    private static final int[] COPY = {
+            0x2A, 0x12, 0x13, 0x05, 0x20, 0xFA, 0xC9
+    };
+
+    public static void main(String[] args) throws IOException {
+
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        MemoryMap mmu = TestRoms.load(createRom());
+
+        Z80 z80 = new Z80(mmu);
+        for (int i = 1; i < args.length; i++) {
+
+            if (args[i].equals("blocks")) {
+
+                z80.setBlockCacheEnabled(true);
+            } else if (args[i].equals("lazy")) {
+
+                z80.setLazyFlagsEnabled(true);
+            } else if (args[i].equals("profile")) {
+
+                z80.setProfilingEnabled(true);
+            }
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+
+            runRound(z80);
+        }
+
+        double total = 0;
+        for (int i = 0; i < rounds; i++) {
+
+            double mhz = runRound(z80);
+            total += mhz;
+            System.out.printf("round %d: %.1f MHz%n", i, mhz);
+        }
+
+        System.out.printf("average: %.1f MHz%n", total / rounds);
+
+        if (z80.isBlockCacheEnabled()) {
+
+            System.out.print(z80.getFusionReport());
+        }
+
+        if (z80.isProfilingEnabled()) {
+
+            System.out.print(z80.getProfiler().getHotspotReport(10));
+            System.out.print(z80.getProfiler().getCollapsedStacks());
+        }
+    }
+
+    private static double runRound(Z80 z80) {
+
+        long start = System.nanoTime();
+
+        int cycles = 0;
+        while (cycles < CYCLES_PER_ROUND) {
+
+            cycles += z80.run(CYCLES_PER_ROUND - cycles);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        return cycles / (elapsed / 1000.0);
+    }
+
+    private static byte[] createRom() {
+
+        byte[] data = TestRoms.create(PROGRAM);
+        data[0x150 + LOOP_BRANCH] = (byte) (LOOP_START - (LOOP_BRANCH + 1));
+
+        for (int i = 0; i < COPY.length; i++) {
+
+            data[0x3000 + i] = (byte) COPY[i];
+        }
+
+        for (int i = 0x4000; i < 0x8000; i++) {
+
+            data[i] = (byte) (i * 7);
+        }
+
+        return data;
+    }
+}